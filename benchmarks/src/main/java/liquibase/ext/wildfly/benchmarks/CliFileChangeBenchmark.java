@@ -0,0 +1,130 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.benchmarks;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.ext.wildfly.change.CliFileChange;
+import liquibase.ext.wildfly.database.WildflyDatabase;
+import liquibase.ext.wildfly.jdbc.WildflyConnection;
+import liquibase.ext.wildfly.sqlgenerator.CliSqlGenerator;
+import liquibase.ext.wildfly.statement.CliStatement;
+import liquibase.resource.FileSystemResourceAccessor;
+import liquibase.statement.SqlStatement;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The benchmark of the CLI file change statements, the generated SQL and the
+ * statement description. The change uses the offline connection.
+ *
+ * @author Andrej Petras
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CliFileChangeBenchmark {
+
+    /**
+     * The number of the CLI lines.
+     */
+    @Param({"100", "10000"})
+    public int lines;
+
+    /**
+     * The number of the placeholders per line.
+     */
+    @Param({"0", "4"})
+    public int placeholders;
+
+    private File dir;
+
+    private WildflyDatabase database;
+
+    private CliFileChange change;
+
+    private CliStatement statement;
+
+    private final CliSqlGenerator generator = new CliSqlGenerator();
+
+    @Setup
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("liquibase-wildfly-benchmark").toFile();
+        File cli = new File(dir, "change.cli");
+        Files.write(cli.toPath(), Lines.create(lines, placeholders), StandardCharsets.UTF_8);
+
+        Properties cliProperties = new Properties();
+        for (int i = 0; i < placeholders; i++) {
+            cliProperties.setProperty("property" + i, "value" + i);
+        }
+        File properties = new File(dir, "cli.properties");
+        try (OutputStream out = Files.newOutputStream(properties.toPath())) {
+            cliProperties.store(out, null);
+        }
+
+        Properties info = new Properties();
+        info.setProperty("liquibase.wildfly.properties", properties.getAbsolutePath());
+        database = new WildflyDatabase();
+        database.setConnection(new JdbcConnection(new WildflyConnection("wildfly:offline", info)));
+
+        change = new CliFileChange();
+        change.setPath(cli.getAbsolutePath());
+        change.setResourceAccessor(new FileSystemResourceAccessor());
+        statement = (CliStatement) change.generateStatements(database)[0];
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        database.close();
+        for (File file : dir.listFiles()) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(dir.toPath());
+    }
+
+    @Benchmark
+    public SqlStatement[] generateStatements() {
+        return change.generateStatements(database);
+    }
+
+    @Benchmark
+    public Object generateSql() {
+        return generator.generateSql(statement, database, null);
+    }
+
+    @Benchmark
+    public String statementToString() {
+        return statement.toString();
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.benchmarks;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import liquibase.ext.wildfly.change.ExpressionValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The benchmark of the CLI property expression expansion.
+ *
+ * @author Andrej Petras
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpressionValidatorBenchmark {
+
+    /**
+     * The number of the CLI lines.
+     */
+    @Param({"100", "10000"})
+    public int lines;
+
+    /**
+     * The number of the placeholders per line.
+     */
+    @Param({"0", "1", "4"})
+    public int placeholders;
+
+    private List<String> cli;
+
+    private Map<String, String> properties;
+
+    @Setup
+    public void setup() {
+        properties = new HashMap<>();
+        for (int i = 0; i < placeholders; i++) {
+            properties.put("property" + i, "value" + i);
+        }
+        cli = Lines.create(lines, placeholders);
+    }
+
+    @Benchmark
+    public void expandExpressions(Blackhole blackhole) {
+        for (String line : cli) {
+            blackhole.consume(ExpressionValidator.expandExpressions(line, properties, false));
+        }
+    }
+
+    @Benchmark
+    public void expandExpressionsEscaping(Blackhole blackhole) {
+        for (String line : cli) {
+            blackhole.consume(ExpressionValidator.expandExpressions(line, properties, true));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import liquibase.changelog.RanChangeSet;
+import liquibase.ext.wildfly.service.FileChangeLogHistoryService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The benchmark of the change log history file loading.
+ *
+ * @author Andrej Petras
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistoryBenchmark {
+
+    /**
+     * The number of the history rows.
+     */
+    @Param({"1000", "10000"})
+    public int history;
+
+    private File file;
+
+    @Setup
+    public void setup() throws IOException {
+        file = File.createTempFile("databasechangelog", ".csv");
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("ID,AUTHOR,FILENAME,DATEEXECUTED,ORDEREXECUTED,EXECTYPE,MD5SUM,DESCRIPTION,COMMENTS,TAG,LIQUIBASE,CONTEXTS,LABELS,DEPLOYMENT_ID\n");
+            for (int i = 0; i < history; i++) {
+                writer.write(i + ",benchmark,changelog-" + (i % 10) + ".xml,2017-01-01T10:00:00," + (i + 1)
+                        + ",EXECUTED,7:" + String.format("%032x", i) + ",cli,,,3.5.3,,,0000000001\n");
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.delete(file.toPath());
+    }
+
+    @Benchmark
+    public List<RanChangeSet> load() throws Exception {
+        return new FileChangeLogHistoryService(null, file).getRanChangeSets();
+    }
+
+    @Benchmark
+    public String maxId() throws Exception {
+        return new FileChangeLogHistoryService(null, file).getMaxId("author", "benchmark");
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The generated CLI lines of the benchmarks.
+ *
+ * @author Andrej Petras
+ */
+final class Lines {
+
+    private Lines() {
+    }
+
+    /**
+     * Creates the CLI lines. Every line is unique, so the template cache of
+     * the expander holds one template per line.
+     *
+     * @param count the number of lines.
+     * @param placeholders the number of the placeholders per line.
+     * @return the CLI lines.
+     */
+    static List<String> create(int count, int placeholders) {
+        List<String> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("/subsystem=datasources/data-source=ds").append(i).append(":add(jndi-name=java:/ds").append(i);
+            for (int p = 0; p < placeholders; p++) {
+                sb.append(",attribute").append(p).append("=${property").append(p).append('}');
+            }
+            sb.append(",max-pool-size=20)");
+            result.add(sb.toString());
+        }
+        return result;
+    }
+}
@@ -15,15 +15,19 @@
  */
 package liquibase.executor;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import liquibase.database.Database;
 import liquibase.exception.DatabaseException;
+import liquibase.ext.wildfly.config.Config;
 import liquibase.ext.wildfly.statement.CliStatement;
+import liquibase.ext.wildfly.statement.RolloutStatement;
 import liquibase.servicelocator.LiquibaseService;
 import liquibase.sql.visitor.SqlVisitor;
 import liquibase.sqlgenerator.SqlGeneratorFactory;
@@ -35,18 +39,41 @@ import liquibase.statement.core.SelectFromDatabaseChangeLogLockStatement;
 import liquibase.statement.core.UnlockDatabaseChangeLogStatement;
 import liquibase.util.StreamUtil;
 
+/**
+ * The logging executor writes the CLI script. The output is buffered and
+ * flushed once per comment and statement. With the system property
+ * {@code liquibase.wildfly.script.batch} the operations of each statement are
+ * wrapped in {@code batch} and {@code run-batch}.
+ */
 @LiquibaseService(skip = true)
 public class LoggingExecutor extends AbstractExecutor {
 
+    /**
+     * The output buffer size.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     private Writer output;
     
     private Executor delegatedReadExecutor;
 
+    /**
+     * The volatile statement generators by statement class.
+     */
+    private final Map<Class<?>, Boolean> volatileStatements = new HashMap<>();
+
+    /**
+     * Wrap the operations of the statement in the batch.
+     */
+    private final boolean batch = Config.isScriptBatch();
+
     public LoggingExecutor(Executor delegatedExecutor, Writer output, Database database) {
-        if (output != null) {
+        if (output == null) {
+            this.output = new NoopWriter();
+        } else if (output instanceof BufferedWriter) {
             this.output = output;
         } else {
-            this.output = new NoopWriter();
+            this.output = new BufferedWriter(output, BUFFER_SIZE);
         }
         this.delegatedReadExecutor = delegatedExecutor;
         setDatabase(database);
@@ -91,6 +118,7 @@ public class LoggingExecutor extends AbstractExecutor {
             output.write(" ");
             output.write(message);
             output.write(StreamUtil.getLineSeparator());
+            output.flush();
         } catch (IOException e) {
             throw new DatabaseException(e);
         }
@@ -102,7 +130,12 @@ public class LoggingExecutor extends AbstractExecutor {
 
     private void outputStatement(SqlStatement sql, List<SqlVisitor> sqlVisitors) throws DatabaseException {
         try {
-            if (SqlGeneratorFactory.getInstance().generateStatementsVolatile(sql, database)) {
+            Boolean volatileStatement = volatileStatements.get(sql.getClass());
+            if (volatileStatement == null) {
+                volatileStatement = SqlGeneratorFactory.getInstance().generateStatementsVolatile(sql, database);
+                volatileStatements.put(sql.getClass(), volatileStatement);
+            }
+            if (volatileStatement) {
                 throw new DatabaseException(sql.getClass().getSimpleName() + " requires access to up to date database metadata which is not available in SQL output mode");
             }
             if (sql instanceof ExecutablePreparedStatement) {
@@ -110,15 +143,59 @@ public class LoggingExecutor extends AbstractExecutor {
             }
 
             CliStatement cli = (CliStatement) sql;
-            for (String statement : cli.getCli()) {
-                output.write(statement);
-                output.write(StreamUtil.getLineSeparator());
+            if (cli.isProfiles()) {
+                writeBatch(cli.getProfileCli());
+            } else if (batch && isBatch(cli)) {
+                writeBatch(cli.getCli());
+            } else {
+                for (String statement : cli.getCli()) {
+                    output.write(statement);
+                    output.write(StreamUtil.getLineSeparator());
+                }
             }
+            output.flush();
         } catch (IOException e) {
             throw new DatabaseException(e);
         }
     }
 
+    private void writeBatch(List<String> lines) throws IOException {
+        String separator = StreamUtil.getLineSeparator();
+        output.write("batch");
+        output.write(separator);
+        for (String line : lines) {
+            output.write(line);
+            output.write(separator);
+        }
+        output.write("run-batch");
+        output.write(separator);
+    }
+
+    /**
+     * Returns {@code true} if the statement can run in the batch. All lines
+     * must be operations, comments or empty lines.
+     *
+     * @param cli the statement.
+     * @return {@code true} if the statement can run in the batch.
+     */
+    private static boolean isBatch(CliStatement cli) {
+        if (cli instanceof RolloutStatement) {
+            return false;
+        }
+        boolean operation = false;
+        for (String item : cli.getCli()) {
+            String line = item.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (!line.startsWith("/") && !line.startsWith(":")) {
+                return false;
+            }
+            operation = true;
+        }
+        return operation;
+    }
+
     @Override
     public <T> T queryForObject(SqlStatement sql, Class<T> requiredType) throws DatabaseException {
         if (sql instanceof SelectFromDatabaseChangeLogLockStatement) {
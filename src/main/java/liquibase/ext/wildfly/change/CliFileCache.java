@@ -0,0 +1,107 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.change;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The shared cache of the CLI file lines.
+ * <p>
+ * The cache is active while at least one user enabled it, for example the
+ * parallel script generation. Each CLI file is read once and its lines are
+ * shared by all change logs and targets. The cache is cleared when the last
+ * user disables it.
+ *
+ * @author Andrej Petras
+ */
+public final class CliFileCache {
+
+    /**
+     * The number of active users.
+     */
+    private static final AtomicInteger USERS = new AtomicInteger();
+
+    /**
+     * The cached lines by file key.
+     */
+    private static final Map<String, List<String>> LINES = new ConcurrentHashMap<>();
+
+    private CliFileCache() {
+    }
+
+    /**
+     * The CLI file loader.
+     */
+    @FunctionalInterface
+    public interface Loader {
+
+        /**
+         * Loads the lines of the CLI file.
+         *
+         * @return the lines of the CLI file.
+         * @throws IOException if the method fails.
+         */
+        List<String> load() throws IOException;
+    }
+
+    /**
+     * Enables the cache.
+     */
+    public static void enable() {
+        USERS.incrementAndGet();
+    }
+
+    /**
+     * Disables the cache. The last user clears the cache.
+     */
+    public static void disable() {
+        if (USERS.decrementAndGet() <= 0) {
+            USERS.set(0);
+            LINES.clear();
+        }
+    }
+
+    /**
+     * Gets the lines of the CLI file.
+     *
+     * @param key the file key.
+     * @param loader the file loader.
+     * @return the lines of the CLI file.
+     * @throws IOException if the method fails.
+     */
+    public static List<String> lines(String key, Loader loader) throws IOException {
+        if (USERS.get() <= 0) {
+            return loader.load();
+        }
+        try {
+            return LINES.computeIfAbsent(key, k -> {
+                try {
+                    return Collections.unmodifiableList(loader.load());
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+}
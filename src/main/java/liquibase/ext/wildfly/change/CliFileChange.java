@@ -19,10 +19,12 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
-import java.util.Properties;
+import java.util.Map;
 import java.util.regex.Pattern;
 import liquibase.change.AbstractChange;
 import liquibase.change.ChangeMetaData;
@@ -33,6 +35,7 @@ import liquibase.exception.SetupException;
 import liquibase.exception.UnexpectedLiquibaseException;
 import liquibase.exception.ValidationErrors;
 import liquibase.ext.wildfly.database.WildflyDatabase;
+import liquibase.ext.wildfly.database.WildflyDatabaseConnection;
 import liquibase.ext.wildfly.statement.CliStatement;
 import liquibase.statement.SqlStatement;
 import liquibase.util.StreamUtil;
@@ -54,12 +57,27 @@ public class CliFileChange extends AbstractChange {
     private String encoding = ENDCODING_DEFAULT;
     private String path;
     private Boolean relativeToChangelogFile;
+    private String profiles;
+    private Integer timeout;
 
     @Override
     public String getConfirmationMessage() {
         return "Wildfly cli file " + getPath() + " executed";
     }
 
+    /**
+     * {@inheritDoc } The description contains the profiles of the change. The
+     * connection profiles are not part of the change and are not listed.
+     */
+    @Override
+    public String getDescription() {
+        List<String> targets = WildflyDatabaseConnection.splitList(profiles);
+        if (targets.isEmpty()) {
+            return super.getDescription();
+        }
+        return super.getDescription() + " profiles=" + String.join(",", targets);
+    }
+
     @Override
     public boolean supports(Database database) {
         return database instanceof WildflyDatabase;
@@ -70,32 +88,66 @@ public class CliFileChange extends AbstractChange {
 
         List<SqlStatement> statments = new LinkedList<>();
 
-        Properties prop = ((WildflyDatabase) database).getCliProperties();
+        Map<String, String> prop = ((WildflyDatabase) database).getCliProperties();
         if (prop == null) {
-            prop = new Properties();
+            prop = Collections.emptyMap();
+        }
+
+        // the change profiles override the connection profiles
+        List<String> targets = WildflyDatabaseConnection.splitList(profiles);
+        if (targets.isEmpty()) {
+            targets = ((WildflyDatabase) database).getDomainProfiles();
         }
 
         List<String> cli = new LinkedList<>();
-        CliStatement cliStatment = new CliStatement(cli);
+        CliStatement cliStatment = new CliStatement(cli, targets);
+        if (getChangeSet() != null) {
+            cliStatment.setChangeSetKey(getChangeSet().toString(false));
+        }
+        if (timeout != null) {
+            cliStatment.setChangeSetTimeout(timeout * 1000L);
+        }
+        try {
+            for (String line : CliFileCache.lines(cacheKey(), this::readLines)) {
+                cli.add(ExpressionValidator.expandExpressions(line, prop, false));
+            }
+        } catch (IOException e) {
+            throw new UnexpectedLiquibaseException(e);
+        }
+        statments.add(cliStatment);
+
+        return statments.toArray(new SqlStatement[statments.size()]);
+    }
+
+    /**
+     * Reads the right trimmed lines of the CLI file.
+     *
+     * @return the lines of the CLI file.
+     * @throws IOException if the method fails.
+     */
+    private List<String> readLines() throws IOException {
+        List<String> result = new ArrayList<>();
         String charset = Optional.ofNullable(encoding).orElse(ENDCODING_DEFAULT);
         try (InputStream sqlStream = openSqlStream()) {
             if (sqlStream != null) {
                 try (BufferedReader reader = new BufferedReader(new InputStreamReader(sqlStream, charset))) {
                     String line = reader.readLine();
                     while (line != null) {
-                        line = LTRIM.matcher(line).replaceAll("");
-                        line = ExpressionValidator.expandExpressions(line, prop, false);
-                        cli.add(line);
+                        result.add(LTRIM.matcher(line).replaceAll(""));
                         line = reader.readLine();
                     }
                 }
             }
-        } catch (IOException e) {
-            throw new UnexpectedLiquibaseException(e);
         }
-        statments.add(cliStatment);
+        return result;
+    }
 
-        return statments.toArray(new SqlStatement[statments.size()]);
+    private String cacheKey() {
+        String base = "";
+        if (Boolean.TRUE.equals(relativeToChangelogFile) && getChangeSet() != null) {
+            base = getChangeSet().getFilePath();
+        }
+        return base + "|" + path + "|" + encoding;
     }
 
     @Override
@@ -119,6 +171,24 @@ public class CliFileChange extends AbstractChange {
         return path;
     }
 
+    @DatabaseChangeProperty(description = "The comma separated list of the domain profiles. Each operation is applied to every profile in one composite operation", exampleValue = "full,full-ha")
+    public String getProfiles() {
+        return profiles;
+    }
+
+    public void setProfiles(String profiles) {
+        this.profiles = profiles;
+    }
+
+    @DatabaseChangeProperty(description = "The timeout of the change set in seconds. The running operation is cancelled when the timeout expires", exampleValue = "600")
+    public Integer getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(Integer timeout) {
+        this.timeout = timeout;
+    }
+
     /**
      * Sets the file name but setUp must be called for the change to have
      * impact.
@@ -15,11 +15,16 @@
  */
 package liquibase.ext.wildfly.change;
 
-import java.util.Properties;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
+ * The CLI property expression expander. The parsed line templates are cached
+ * and shared by all change logs.
  *
  * @author Andrej Petras
  */
@@ -27,34 +32,95 @@ public class ExpressionValidator {
 
     private static final Pattern EXPRESSION_PATTERN = Pattern.compile("(\\$\\{[^\\}]+\\})");
 
-    public static String expandExpressions(String text, Properties properties, boolean enableEscaping) {
+    /**
+     * The maximum number of cached templates.
+     */
+    private static final int MAX_TEMPLATES = 10000;
+
+    /**
+     * The cached templates without escaping.
+     */
+    private static final Map<String, Segment[]> TEMPLATES = new ConcurrentHashMap<>();
+
+    /**
+     * The cached templates with escaping.
+     */
+    private static final Map<String, Segment[]> ESCAPED_TEMPLATES = new ConcurrentHashMap<>();
+
+    public static String expandExpressions(String text, Map<?, ?> properties, boolean enableEscaping) {
         if (text == null) {
             return null;
         }
-        Matcher matcher = EXPRESSION_PATTERN.matcher(text);
-        String originalText = text;
-        while (matcher.find()) {
-            String expressionString = originalText.substring(matcher.start(), matcher.end());
-            String valueTolookup = expressionString.replaceFirst("\\$\\{", "").replaceFirst("\\}$", "");
-
-            boolean tmp = enableEscaping && valueTolookup.startsWith(":");
-            if (!tmp) {
-                Object value = properties.get(valueTolookup);
+        if (text.indexOf("${") < 0) {
+            return text;
+        }
+        Map<String, Segment[]> cache = enableEscaping ? ESCAPED_TEMPLATES : TEMPLATES;
+        Segment[] template = cache.get(text);
+        if (template == null) {
+            template = parse(text, enableEscaping);
+            if (cache.size() < MAX_TEMPLATES) {
+                cache.put(text, template);
+            }
+        }
 
-                if (value != null) {
-                    text = text.replace(expressionString, value.toString());
-                } else {
-                    throw new RuntimeException("Missing property [" + valueTolookup + "] in the CLI properties!" );
+        StringBuilder sb = new StringBuilder(text.length() + 32);
+        for (Segment segment : template) {
+            if (segment.expression) {
+                Object value = properties.get(segment.text);
+                if (value == null) {
+                    throw new RuntimeException("Missing property [" + segment.text + "] in the CLI properties!" );
                 }
+                sb.append(value.toString());
+            } else {
+                sb.append(segment.text);
             }
         }
+        return sb.toString();
+    }
 
-        // replace all escaped expressions with its literal
-        if (enableEscaping) {
-            text = text.replaceAll("\\$\\{:(.+?)}", "\\$\\{$1}");
+    /**
+     * Parses the text to the literal and expression segments. The escaped
+     * expression {@code ${:name}} is the literal {@code ${name}}.
+     *
+     * @param text the text.
+     * @param enableEscaping the escaping flag.
+     * @return the segments.
+     */
+    private static Segment[] parse(String text, boolean enableEscaping) {
+        List<Segment> result = new ArrayList<>();
+        Matcher matcher = EXPRESSION_PATTERN.matcher(text);
+        int index = 0;
+        while (matcher.find()) {
+            if (matcher.start() > index) {
+                result.add(new Segment(text.substring(index, matcher.start()), false));
+            }
+            String name = text.substring(matcher.start() + 2, matcher.end() - 1);
+            if (enableEscaping && name.startsWith(":")) {
+                result.add(new Segment("${" + name.substring(1) + "}", false));
+            } else {
+                result.add(new Segment(name, true));
+            }
+            index = matcher.end();
+        }
+        if (index < text.length()) {
+            result.add(new Segment(text.substring(index), false));
         }
+        return result.toArray(new Segment[result.size()]);
+    }
+
+    /**
+     * The template segment.
+     */
+    private static class Segment {
+
+        private final String text;
 
-        return text;
+        private final boolean expression;
+
+        Segment(String text, boolean expression) {
+            this.text = text;
+            this.expression = expression;
+        }
     }
 
 }
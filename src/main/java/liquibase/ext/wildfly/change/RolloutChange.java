@@ -0,0 +1,126 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.change;
+
+import liquibase.change.AbstractChange;
+import liquibase.change.ChangeMetaData;
+import liquibase.change.DatabaseChange;
+import liquibase.change.DatabaseChangeProperty;
+import liquibase.database.Database;
+import liquibase.exception.ValidationErrors;
+import liquibase.ext.wildfly.database.WildflyDatabase;
+import liquibase.ext.wildfly.database.WildflyDatabaseConnection;
+import liquibase.ext.wildfly.statement.RolloutStatement;
+import liquibase.statement.SqlStatement;
+
+/**
+ * The rolling reload of the server groups in the domain mode.
+ *
+ * @author Andrej Petras
+ */
+@DatabaseChange(
+        name = "rollout",
+        description = "Rolling reload of the wildfly server groups",
+        priority = ChangeMetaData.PRIORITY_DEFAULT)
+public class RolloutChange extends AbstractChange {
+
+    private String serverGroups;
+    private Integer maxParallel;
+    private Integer maxFailures;
+    private Integer timeout;
+    private Boolean all;
+
+    @Override
+    public String getConfirmationMessage() {
+        return "Wildfly server groups " + getServerGroups() + " reloaded";
+    }
+
+    @Override
+    public boolean supports(Database database) {
+        return database instanceof WildflyDatabase;
+    }
+
+    @Override
+    public SqlStatement[] generateStatements(Database database) {
+        return new SqlStatement[]{
+            new RolloutStatement(WildflyDatabaseConnection.splitList(serverGroups),
+                    maxParallel == null ? 1 : maxParallel,
+                    maxFailures == null ? 0 : maxFailures,
+                    timeout == null ? 300 : timeout,
+                    Boolean.TRUE.equals(all))
+        };
+    }
+
+    @DatabaseChangeProperty(description = "The comma separated list of the server groups", requiredForDatabase = "all", exampleValue = "main-server-group")
+    public String getServerGroups() {
+        return serverGroups;
+    }
+
+    public void setServerGroups(String serverGroups) {
+        this.serverGroups = serverGroups;
+    }
+
+    @DatabaseChangeProperty(description = "The maximum number of servers reloaded in parallel", exampleValue = "1")
+    public Integer getMaxParallel() {
+        return maxParallel;
+    }
+
+    public void setMaxParallel(Integer maxParallel) {
+        this.maxParallel = maxParallel;
+    }
+
+    @DatabaseChangeProperty(description = "The maximum number of failed servers before the rollout stops", exampleValue = "0")
+    public Integer getMaxFailures() {
+        return maxFailures;
+    }
+
+    public void setMaxFailures(Integer maxFailures) {
+        this.maxFailures = maxFailures;
+    }
+
+    @DatabaseChangeProperty(description = "The timeout of one reload wave in seconds", exampleValue = "300")
+    public Integer getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(Integer timeout) {
+        this.timeout = timeout;
+    }
+
+    @DatabaseChangeProperty(description = "Reload all started servers, not only the servers which require a reload or restart", exampleValue = "false")
+    public Boolean getAll() {
+        return all;
+    }
+
+    public void setAll(Boolean all) {
+        this.all = all;
+    }
+
+    @Override
+    public ValidationErrors validate(Database database) {
+        ValidationErrors validationErrors = new ValidationErrors();
+        if (WildflyDatabaseConnection.splitList(serverGroups).isEmpty()) {
+            validationErrors.addError("'serverGroups' is required");
+        }
+        if (maxParallel != null && maxParallel < 1) {
+            validationErrors.addError("'maxParallel' must be greater than zero");
+        }
+        if (maxFailures != null && maxFailures < 0) {
+            validationErrors.addError("'maxFailures' must not be negative");
+        }
+        return validationErrors;
+    }
+}
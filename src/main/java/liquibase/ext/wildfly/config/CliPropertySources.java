@@ -0,0 +1,128 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import liquibase.logging.LogFactory;
+
+/**
+ * The layered CLI property sources.
+ * <p>
+ * The property files are merged in the order of the list, so the later file
+ * overrides the properties of the earlier file, for example
+ * {@code defaults.properties,prod.properties,secrets.properties}. Each file is
+ * parsed once per JVM and parsed again only when its modification time or
+ * size changes.
+ *
+ * @author Andrej Petras
+ */
+public class CliPropertySources {
+
+    /**
+     * The parsed property files.
+     */
+    private static final Map<Path, Source> SOURCES = new ConcurrentHashMap<>();
+
+    private CliPropertySources() {
+    }
+
+    /**
+     * Loads and merges the property files.
+     *
+     * @param files the property files in the order of precedence, the last
+     * file wins.
+     * @return the immutable merged properties.
+     */
+    public static Map<String, String> load(List<String> files) {
+        Map<String, String> result = new HashMap<>();
+        for (String file : files) {
+            Source source = source(Paths.get(file).toAbsolutePath().normalize());
+            if (source != null) {
+                result.putAll(source.properties);
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Clears the parsed property files.
+     */
+    public static void clear() {
+        SOURCES.clear();
+    }
+
+    /**
+     * Gets the parsed property file.
+     *
+     * @param path the property file.
+     * @return the parsed property file or {@code null} if the file could not
+     * be read.
+     */
+    private static Source source(Path path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            long modified = attributes.lastModifiedTime().toMillis();
+            long size = attributes.size();
+            Source source = SOURCES.get(path);
+            if (source == null || source.modified != modified || source.size != size) {
+                LogFactory.getLogger().info("Load CLI properties: " + path);
+                Properties tmp = new Properties();
+                try (InputStream in = Files.newInputStream(path)) {
+                    tmp.load(in);
+                }
+                Map<String, String> properties = new HashMap<>();
+                for (String name : tmp.stringPropertyNames()) {
+                    properties.put(name, tmp.getProperty(name));
+                }
+                source = new Source(modified, size, properties);
+                SOURCES.put(path, source);
+            }
+            return source;
+        } catch (IOException ex) {
+            LogFactory.getLogger().severe(ex.getMessage(), ex);
+            return null;
+        }
+    }
+
+    /**
+     * The parsed property file.
+     */
+    private static class Source {
+
+        private final long modified;
+
+        private final long size;
+
+        private final Map<String, String> properties;
+
+        Source(long modified, long size, Map<String, String> properties) {
+            this.modified = modified;
+            this.size = size;
+            this.properties = properties;
+        }
+    }
+}
@@ -39,6 +39,56 @@ public class Config {
         }
     }
 
+    /**
+     * Gets the directory of the change set progress markers. The default
+     * directory is {@code .wildfly-progress} next to the change log history
+     * file.
+     *
+     * @return the directory of the progress markers.
+     */
+    public static File getProgressDirectory() {
+        String dir = System.getProperty(CONFIG_BASE + ".progress.dir");
+        if (dir == null || dir.isEmpty()) {
+            return new File(getChangeLogHistoryFile().getParentFile(), ".wildfly-progress");
+        }
+        return new File(dir);
+    }
+
+    /**
+     * Gets the minimal interval between two writes of a progress marker. The
+     * acknowledged lines in between are written when the interval elapses or
+     * the commands stop. Zero writes the marker after each acknowledged line.
+     *
+     * @return the interval in milliseconds.
+     */
+    public static long getProgressInterval() {
+        return Long.getLong(CONFIG_BASE + ".progress.interval", 1000);
+    }
+
+    public static boolean isChangeLogHistoryFullLoad() {
+        return Boolean.getBoolean(CONFIG_BASE + ".file.full-load");
+    }
+
+    public static int getCheckSumThreads() {
+        return Integer.getInteger(CONFIG_BASE + ".checksum.threads", Math.min(Runtime.getRuntime().availableProcessors(), 8));
+    }
+
+    public static long getLockLease() {
+        return Long.getLong(CONFIG_BASE + ".lock.lease", 120) * 1000;
+    }
+
+    public static long getLockClockSkew() {
+        return Long.getLong(CONFIG_BASE + ".lock.clock-skew", 5) * 1000;
+    }
+
+    public static int getScriptThreads() {
+        return Integer.getInteger(CONFIG_BASE + ".script.threads", Runtime.getRuntime().availableProcessors());
+    }
+
+    public static boolean isScriptBatch() {
+        return Boolean.getBoolean(CONFIG_BASE + ".script.batch");
+    }
+
     public static String getLockProperty() {
         return System.getProperty(CONFIG_BASE + ".property", CONFIG_BASE + ".lock");
     }
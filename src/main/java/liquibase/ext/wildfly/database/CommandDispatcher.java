@@ -0,0 +1,155 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.database;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The single writer dispatcher of the CLI command context.
+ * <p>
+ * The command context is not safe for concurrent use, so every task which
+ * uses it runs on the one dispatcher thread. The producer threads submit the
+ * tasks through the bounded queue and block while the queue is full. The task
+ * submitted from the dispatcher thread runs directly.
+ *
+ * @author Andrej Petras
+ */
+public class CommandDispatcher {
+
+    /**
+     * The dispatcher task.
+     *
+     * @param <T> the result type.
+     */
+    @FunctionalInterface
+    public interface Task<T> {
+
+        /**
+         * Runs the task.
+         *
+         * @return the task result.
+         * @throws Exception if the task fails.
+         */
+        T call() throws Exception;
+    }
+
+    /**
+     * The single thread executor.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * The dispatcher thread.
+     */
+    private volatile Thread thread;
+
+    public CommandDispatcher(String name, int capacity) {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(capacity), r -> {
+            Thread tmp = new Thread(r, name);
+            tmp.setDaemon(true);
+            tmp.setContextClassLoader(loader);
+            thread = tmp;
+            return tmp;
+        }, (r, e) -> {
+            if (e.isShutdown()) {
+                throw new RejectedExecutionException("The command dispatcher is closed");
+            }
+            try {
+                e.getQueue().put(r);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for the command dispatcher queue", ex);
+            }
+        });
+    }
+
+    /**
+     * Submits the task.
+     *
+     * @param <T> the result type.
+     * @param task the task.
+     * @return the future task result.
+     */
+    public <T> CompletableFuture<T> submit(Task<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (isDispatcherThread()) {
+            run(task, future);
+            return future;
+        }
+        try {
+            executor.execute(() -> run(task, future));
+        } catch (RejectedExecutionException ex) {
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    /**
+     * Runs the task and waits for the result.
+     *
+     * @param <T> the result type.
+     * @param task the task.
+     * @return the task result.
+     * @throws Exception the exception of the task.
+     */
+    public <T> T call(Task<T> task) throws Exception {
+        if (isDispatcherThread()) {
+            return task.call();
+        }
+        try {
+            return submit(task).get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns {@code true} if the current thread is the dispatcher thread.
+     *
+     * @return {@code true} for the dispatcher thread.
+     */
+    public boolean isDispatcherThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Closes the dispatcher. The queued tasks are still executed.
+     */
+    public void close() {
+        executor.shutdown();
+    }
+
+    private static <T> void run(Task<T> task, CompletableFuture<T> future) {
+        if (future.isDone()) {
+            return;
+        }
+        try {
+            future.complete(task.call());
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        }
+    }
+}
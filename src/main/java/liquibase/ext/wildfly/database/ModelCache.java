@@ -0,0 +1,219 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.database;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.Property;
+
+/**
+ * The least recently used cache of the server resources.
+ * <p>
+ * The entry is a resource or a recursive subtree. The recursive subtree also
+ * answers the reads of its descendants, a descendant which is not in the
+ * subtree does not exist. A write to an address removes the entries of the
+ * address, its ancestors and its descendants. The cache is bounded by the
+ * number of entries and by the weight, the length of the model string of the
+ * entries. The lock service does not use the cache.
+ * <p>
+ * The returned and the stored model nodes are shared and not copied, because
+ * the recursive subtrees are large. The callers must not modify them, note
+ * that {@link ModelNode#get(String)} adds a missing key, so check the key with
+ * {@link ModelNode#hasDefined(String)} first.
+ *
+ * @author Andrej Petras
+ */
+public class ModelCache {
+
+    /**
+     * The wildcard address value.
+     */
+    private static final String WILDCARD = "*";
+
+    /**
+     * The maximum number of entries.
+     */
+    private final int maxEntries;
+
+    /**
+     * The maximum weight of all entries.
+     */
+    private final long maxWeight;
+
+    /**
+     * The entries by address key in the access order.
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The weight of all entries.
+     */
+    private long weight;
+
+    public ModelCache(int maxEntries, long maxWeight) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Gets the cached resource.
+     *
+     * @param address the resource address.
+     * @return the resource, undefined model node if the resource does not exist
+     * or {@code null} if the resource is not cached.
+     */
+    public synchronized ModelNode get(ModelNode address) {
+        String key = key(address);
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            return entry.model;
+        }
+        List<Property> elements = address.asPropertyList();
+        for (int i = elements.size() - 1; i >= 0; i--) {
+            entry = entries.get(key(elements.subList(0, i)));
+            if (entry != null && entry.recursive) {
+                if (!entry.model.isDefined()) {
+                    return entry.model;
+                }
+                ModelNode result = entry.model;
+                for (Property element : elements.subList(i, elements.size())) {
+                    result = child(result, element.getName(), element.getValue().asString());
+                    if (!result.isDefined()) {
+                        break;
+                    }
+                }
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Puts the resource to the cache.
+     *
+     * @param address the resource address.
+     * @param model the resource or undefined model node if the resource does
+     * not exist.
+     * @param recursive the recursive subtree flag.
+     */
+    public synchronized void put(ModelNode address, ModelNode model, boolean recursive) {
+        Entry entry = new Entry(model, recursive);
+        if (entry.weight > maxWeight) {
+            return;
+        }
+        Entry old = entries.put(key(address), entry);
+        if (old != null) {
+            weight = weight - old.weight;
+        }
+        weight = weight + entry.weight;
+        Iterator<Entry> iter = entries.values().iterator();
+        while ((entries.size() > maxEntries || weight > maxWeight) && iter.hasNext()) {
+            weight = weight - iter.next().weight;
+            iter.remove();
+        }
+    }
+
+    /**
+     * Invalidates the cache after a write to the address. The wildcard address
+     * is truncated before the first wildcard.
+     *
+     * @param address the written address.
+     */
+    public synchronized void invalidate(ModelNode address) {
+        StringBuilder sb = new StringBuilder();
+        for (Property element : address.asPropertyList()) {
+            String value = element.getValue().asString();
+            if (WILDCARD.equals(value)) {
+                break;
+            }
+            sb.append('/').append(element.getName()).append('=').append(value);
+        }
+        String key = sb.toString();
+        Iterator<Map.Entry<String, Entry>> iter = entries.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<String, Entry> item = iter.next();
+            String tmp = item.getKey();
+            if (isPrefix(key, tmp) || isPrefix(tmp, key)) {
+                weight = weight - item.getValue().weight;
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Clears the cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    private static boolean isPrefix(String prefix, String key) {
+        return key.startsWith(prefix) && (key.length() == prefix.length() || key.charAt(prefix.length()) == '/');
+    }
+
+    private static ModelNode child(ModelNode model, String type, String name) {
+        if (!model.hasDefined(type) || !model.get(type).hasDefined(name)) {
+            return new ModelNode();
+        }
+        return model.get(type, name);
+    }
+
+    private static String key(ModelNode address) {
+        return key(address.asPropertyList());
+    }
+
+    private static String key(List<Property> elements) {
+        StringBuilder sb = new StringBuilder();
+        for (Property element : elements) {
+            sb.append('/').append(element.getName()).append('=').append(element.getValue().asString());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The cache entry.
+     */
+    private static class Entry {
+
+        private final ModelNode model;
+
+        private final boolean recursive;
+
+        private final long weight;
+
+        Entry(ModelNode model, boolean recursive) {
+            this.model = model;
+            this.recursive = recursive;
+            this.weight = model.toString().length();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.database;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import liquibase.exception.DatabaseException;
+import org.jboss.as.controller.client.helpers.ClientConstants;
+import org.jboss.as.controller.client.helpers.Operations;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * The snapshot of the server resources.
+ * <p>
+ * The resources which are not in the model cache are read by one composite
+ * {@code read-resource} operation. The composite operation fails if one
+ * resource does not exist, in this case the step results of the failed
+ * composite are used and the steps without result are read one by one. The
+ * missing resource is an undefined model node. The read resources are put to
+ * the model cache and are shared with it, they must not be modified.
+ *
+ * @author Andrej Petras
+ */
+public class ModelSnapshot {
+
+    /**
+     * The connection.
+     */
+    private final WildflyDatabaseConnection connection;
+
+    /**
+     * The resources by CLI address.
+     */
+    private final Map<String, ModelNode> resources = new HashMap<>();
+
+    public ModelSnapshot(WildflyDatabaseConnection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Loads the resources in one composite operation.
+     *
+     * @param addresses the CLI addresses of the resources.
+     * @throws DatabaseException if the method fails.
+     */
+    public void load(Collection<String> addresses) throws DatabaseException {
+        ModelCache cache = connection.getModelCache();
+        List<String> items = new ArrayList<>();
+        List<ModelNode> steps = new ArrayList<>();
+        for (String address : new LinkedHashSet<>(addresses)) {
+            if (resources.containsKey(address)) {
+                continue;
+            }
+            ModelNode tmp = connection.buildDomainProfileAddress(address);
+            ModelNode cached = cache.get(tmp);
+            if (cached != null) {
+                resources.put(address, cached);
+            } else {
+                items.add(address);
+                steps.add(Operations.createReadResourceOperation(tmp));
+            }
+        }
+        if (items.isEmpty()) {
+            return;
+        }
+        ModelNode node = connection.executeComposite(steps);
+        if (node == null) {
+            throw new DatabaseException("Could not read the server resources. The server connection is closed.");
+        }
+        for (int i = 0; i < items.size(); i++) {
+            ModelNode step = node.get(ClientConstants.RESULT, "step-" + (i + 1));
+            ModelNode address = Operations.getOperationAddress(steps.get(i));
+            if (step.isDefined() && Operations.isSuccessfulOutcome(step)) {
+                cache.put(address, step.get(ClientConstants.RESULT), false);
+                resources.put(items.get(i), step.get(ClientConstants.RESULT));
+            } else {
+                resources.put(items.get(i), connection.readResource(address));
+            }
+        }
+    }
+
+    /**
+     * Gets the resource. The resource which is not in the snapshot is read
+     * from the server.
+     *
+     * @param address the CLI address of the resource.
+     * @return the resource or undefined model node if the resource does not
+     * exist.
+     * @throws DatabaseException if the method fails.
+     */
+    public ModelNode get(String address) throws DatabaseException {
+        ModelNode result = resources.get(address);
+        if (result == null) {
+            result = connection.readResource(connection.buildDomainProfileAddress(address));
+            resources.put(address, result);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.database;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import liquibase.ext.wildfly.config.Config;
+import liquibase.logging.LogFactory;
+
+/**
+ * The timeouts of the management operations and CLI commands.
+ * <p>
+ * The property {@code liquibase.wildfly.timeout.op.<pattern>} defines the
+ * timeout in seconds for the operations or commands with the name matching the
+ * pattern, for example {@code liquibase.wildfly.timeout.op.deploy=600} or
+ * {@code liquibase.wildfly.timeout.op.*-attribute=10}. The exact name wins
+ * over the patterns and the longer pattern wins over the shorter one. The
+ * property {@code liquibase.wildfly.timeout.op} is the default timeout. The
+ * connection properties override the system properties.
+ *
+ * @author Andrej Petras
+ */
+public class OperationTimeouts {
+
+    /**
+     * The operation timeout property prefix.
+     */
+    private static final String PREFIX = Config.CONFIG_BASE + ".timeout.op";
+
+    /**
+     * The timeout rules ordered by precedence.
+     */
+    private final List<Rule> rules = new ArrayList<>();
+
+    /**
+     * The resolved timeouts by operation name.
+     */
+    private final ConcurrentHashMap<String, Long> resolved = new ConcurrentHashMap<>();
+
+    /**
+     * The default timeout in milliseconds.
+     */
+    private final long defaultTimeout;
+
+    public OperationTimeouts(Properties info) {
+        Properties tmp = new Properties();
+        load(System.getProperties(), tmp);
+        load(info, tmp);
+        defaultTimeout = seconds(tmp.getProperty(PREFIX));
+        for (String name : tmp.stringPropertyNames()) {
+            if (name.startsWith(PREFIX + ".")) {
+                rules.add(new Rule(name.substring(PREFIX.length() + 1), seconds(tmp.getProperty(name))));
+            }
+        }
+        rules.sort(Comparator.comparing((Rule r) -> r.exact).reversed().thenComparing(r -> -r.pattern.pattern().length()));
+    }
+
+    /**
+     * Returns {@code true} if no timeout is configured.
+     *
+     * @return {@code true} if no timeout is configured.
+     */
+    public boolean isEmpty() {
+        return defaultTimeout <= 0 && rules.isEmpty();
+    }
+
+    /**
+     * Gets the timeout of the operation or command.
+     *
+     * @param name the operation or command name.
+     * @return the timeout in milliseconds or zero without timeout.
+     */
+    public long getTimeout(String name) {
+        if (rules.isEmpty()) {
+            return defaultTimeout;
+        }
+        return resolved.computeIfAbsent(name, n -> {
+            for (Rule rule : rules) {
+                if (rule.pattern.matcher(n).matches()) {
+                    return rule.timeout;
+                }
+            }
+            return defaultTimeout;
+        });
+    }
+
+    private static void load(Properties source, Properties target) {
+        for (String name : source.stringPropertyNames()) {
+            if (name.startsWith(PREFIX)) {
+                target.setProperty(name, source.getProperty(name));
+            }
+        }
+    }
+
+    private static long seconds(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value.trim()) * 1000;
+        } catch (NumberFormatException ex) {
+            LogFactory.getLogger().warning("Invalid operation timeout " + value);
+            return 0;
+        }
+    }
+
+    /**
+     * The timeout rule.
+     */
+    private static class Rule {
+
+        private final Pattern pattern;
+
+        private final boolean exact;
+
+        private final long timeout;
+
+        Rule(String glob, long timeout) {
+            this.exact = glob.indexOf('*') < 0;
+            StringBuilder sb = new StringBuilder();
+            String[] parts = glob.split("\\*", -1);
+            for (int i = 0; i < parts.length; i++) {
+                if (i > 0) {
+                    sb.append(".*");
+                }
+                sb.append(Pattern.quote(parts[i]));
+            }
+            this.pattern = Pattern.compile(sb.toString());
+            this.timeout = timeout;
+        }
+    }
+}
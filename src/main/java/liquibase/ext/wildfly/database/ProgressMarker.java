@@ -0,0 +1,170 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.database;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.regex.Pattern;
+import liquibase.exception.DatabaseException;
+import liquibase.ext.wildfly.config.Config;
+import liquibase.logging.LogFactory;
+
+/**
+ * The durable progress marker of the change set CLI lines.
+ * <p>
+ * The marker file contains the hash of the CLI lines and the index of the
+ * last acknowledged line. The marker of different CLI lines is ignored, so the
+ * changed change set starts from the first line again. The marker belongs to
+ * the target, the controller URL and the change log history file, so the runs
+ * of one change log against different servers or history files which share
+ * the progress directory never resume from each other's marker.
+ * <p>
+ * The marker is written at most once per {@link Config#getProgressInterval()}
+ * and the last acknowledged line is written by {@link #flush()} when the
+ * commands stop.
+ *
+ * @author Andrej Petras
+ */
+public class ProgressMarker {
+
+    /**
+     * The invalid characters of the marker file name.
+     */
+    private static final Pattern INVALID = Pattern.compile("[^A-Za-z0-9_.\\-]");
+
+    /**
+     * The maximum length of the change set key in the file name.
+     */
+    private static final int MAX_NAME = 100;
+
+    /**
+     * The marker file.
+     */
+    private final Path file;
+
+    /**
+     * The hash of the CLI lines.
+     */
+    private final int hash;
+
+    /**
+     * The minimal interval between two writes in milliseconds.
+     */
+    private final long interval;
+
+    /**
+     * The last acknowledged line which is not written yet or -1.
+     */
+    private int pending = -1;
+
+    /**
+     * The time of the last write.
+     */
+    private long written;
+
+    public ProgressMarker(String controller, String key, List<String> commands) {
+        String target = (controller == null ? "embedded" : controller) + "|" + Config.getChangeLogHistoryFile().getPath();
+        String name = INVALID.matcher(key).replaceAll("_");
+        if (name.length() > MAX_NAME) {
+            name = name.substring(name.length() - MAX_NAME);
+        }
+        this.file = Config.getProgressDirectory().toPath().resolve(name + "-" + Integer.toHexString(key.hashCode())
+                + "-" + Integer.toHexString(target.hashCode()) + ".progress");
+        this.hash = 31 * commands.hashCode() + target.hashCode();
+        this.interval = Config.getProgressInterval();
+    }
+
+    /**
+     * Gets the index of the last acknowledged line.
+     *
+     * @return the index of the last acknowledged line or -1.
+     */
+    public int getLast() {
+        try {
+            String[] tmp = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim().split(" ");
+            if (tmp.length == 2 && Integer.parseInt(tmp[0]) == hash) {
+                return Integer.parseInt(tmp[1]);
+            }
+            LogFactory.getLogger().info("The progress marker " + file + " belongs to different CLI lines or target and is ignored");
+        } catch (NoSuchFileException ex) {
+            // no progress
+        } catch (IOException | NumberFormatException ex) {
+            LogFactory.getLogger().warning("Could not read the progress marker " + file, ex);
+        }
+        return -1;
+    }
+
+    /**
+     * Acknowledges the applied line. The marker is written when the write
+     * interval elapsed since the last write.
+     *
+     * @param index the index of the applied line.
+     * @throws DatabaseException if the marker could not be written.
+     */
+    public void acknowledge(int index) throws DatabaseException {
+        pending = index;
+        if (System.currentTimeMillis() - written >= interval) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the last acknowledged line if it is not written yet. The marker
+     * is written to a temporary file which replaces the marker file.
+     *
+     * @throws DatabaseException if the marker could not be written.
+     */
+    public void flush() throws DatabaseException {
+        if (pending < 0) {
+            return;
+        }
+        int index = pending;
+        pending = -1;
+        written = System.currentTimeMillis();
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(tmp, (hash + " " + index).getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE, StandardOpenOption.DSYNC);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            throw new DatabaseException("Could not write the progress marker " + file, ex);
+        }
+    }
+
+    /**
+     * Deletes the marker after all lines are applied.
+     */
+    public void delete() {
+        pending = -1;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            LogFactory.getLogger().warning("Could not delete the progress marker " + file, ex);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return file.toString();
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.database;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import liquibase.exception.DatabaseException;
+import org.jboss.as.controller.client.helpers.ClientConstants;
+import org.jboss.as.controller.client.helpers.Operations;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.Property;
+
+/**
+ * The client side fan-out of the read operations with wildcard addresses.
+ * <p>
+ * Only the {@code read-*} operations are fanned out. The targets are
+ * independent operations, so a write which fails on one target would leave
+ * the others changed; the wildcard writes are sent to the server instead.
+ * <p>
+ * Each wildcard address element is resolved by one {@code read-children-names}
+ * operation which is cached until a child of that type is added or removed or
+ * the parent resource is removed. The
+ * operations for the resolved addresses are dispatched asynchronously with at
+ * most {@code max} operations in flight. The aggregated result has the same
+ * form as the wildcard result of the controller, a list of the per-target
+ * {@code address}, {@code outcome} and {@code result} or
+ * {@code failure-description}.
+ *
+ * @author Andrej Petras
+ */
+public class WildcardFanOut {
+
+    /**
+     * The wildcard address value.
+     */
+    private static final String WILDCARD = "*";
+
+    /**
+     * The connection.
+     */
+    private final WildflyDatabaseConnection connection;
+
+    /**
+     * The maximum number of operations in flight.
+     */
+    private final int max;
+
+    /**
+     * The cached children names by parent address and child type.
+     */
+    private final Map<ModelNode, Map<String, List<String>>> children = new ConcurrentHashMap<>();
+
+    public WildcardFanOut(WildflyDatabaseConnection connection, int max) {
+        this.connection = connection;
+        this.max = Math.max(1, max);
+    }
+
+    /**
+     * Returns {@code true} if the CLI line is an operation with the wildcard
+     * address. Only the address before the operation name is checked, the
+     * parameter values may contain {@code =*}.
+     *
+     * @param line the CLI line.
+     * @return {@code true} if the CLI line is an operation with the wildcard
+     * address.
+     */
+    public static boolean isWildcard(String line) {
+        if (!line.startsWith("/")) {
+            return false;
+        }
+        String address = address(line);
+        int index = address.indexOf("=" + WILDCARD);
+        while (index >= 0) {
+            int end = index + 1 + WILDCARD.length();
+            if (end == address.length() || address.charAt(end) == '/') {
+                return true;
+            }
+            index = address.indexOf("=" + WILDCARD, end);
+        }
+        return false;
+    }
+
+    /**
+     * Gets the address part of the CLI operation line before the first
+     * unquoted and unescaped {@code :}.
+     *
+     * @param line the CLI operation line.
+     * @return the address part.
+     */
+    private static String address(String line) {
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ':' && !quoted) {
+                return line.substring(0, i);
+            }
+        }
+        return line;
+    }
+
+    /**
+     * Clears the cached children names.
+     */
+    public void clear() {
+        children.clear();
+    }
+
+    /**
+     * Invalidates the cached children names which the {@code add} or
+     * {@code remove} operation on the address changes: the children of the
+     * same type of the parent resource and every cached subtree of the
+     * address.
+     *
+     * @param address the operation address.
+     */
+    public void invalidate(ModelNode address) {
+        List<Property> elements = address.asPropertyList();
+        if (elements.isEmpty()) {
+            clear();
+            return;
+        }
+        String type = elements.get(elements.size() - 1).getName();
+        List<Property> parent = elements.subList(0, elements.size() - 1);
+        children.keySet().removeIf(key -> isPrefix(elements, key));
+        children.forEach((key, types) -> {
+            if (key.asPropertyList().size() == parent.size() && isPrefix(parent, key)) {
+                types.remove(type);
+            }
+        });
+    }
+
+    /**
+     * Returns {@code true} if the address elements are the prefix of the
+     * address. The wildcard value matches every value.
+     *
+     * @param prefix the prefix address elements.
+     * @param address the address.
+     * @return {@code true} if the elements are the prefix of the address.
+     */
+    private static boolean isPrefix(List<Property> prefix, ModelNode address) {
+        List<Property> items = address.asPropertyList();
+        if (items.size() < prefix.size()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.size(); i++) {
+            Property a = prefix.get(i);
+            Property b = items.get(i);
+            String value = a.getValue().asString();
+            if (!a.getName().equals(b.getName()) || !(WILDCARD.equals(value) || value.equals(b.getValue().asString()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Executes the operation for every resolved address.
+     *
+     * @param operation the operation with the wildcard address.
+     * @param timeout the timeout of all operations in milliseconds or zero.
+     * @return the aggregated result.
+     * @throws DatabaseException if the wildcard address could not be resolved
+     * or the operations time out.
+     */
+    public ModelNode execute(ModelNode operation, long timeout) throws DatabaseException {
+        List<ModelNode> addresses = resolve(Operations.getOperationAddress(operation));
+        long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+
+        List<ModelNode> results = new ArrayList<>(addresses.size());
+        Deque<Future<ModelNode>> inFlight = new ArrayDeque<>();
+        try {
+            for (ModelNode address : addresses) {
+                if (inFlight.size() >= max) {
+                    results.add(get(inFlight.poll(), deadline));
+                }
+                ModelNode op = operation.clone();
+                op.get(ClientConstants.OP_ADDR).set(address);
+                inFlight.add(connection.executeAsync(op));
+            }
+            while (!inFlight.isEmpty()) {
+                results.add(get(inFlight.poll(), deadline));
+            }
+        } catch (TimeoutException ex) {
+            for (Future<ModelNode> future : inFlight) {
+                future.cancel(true);
+            }
+            throw new DatabaseException("The wildcard operation " + Operations.getOperationName(operation) + " timed out after " + timeout
+                    + " ms, " + results.size() + " of " + addresses.size() + " targets completed, the rest was cancelled");
+        }
+
+        boolean success = true;
+        ModelNode result = new ModelNode();
+        ModelNode list = result.get(ClientConstants.RESULT).setEmptyList();
+        for (int i = 0; i < addresses.size(); i++) {
+            ModelNode item = results.get(i);
+            ModelNode target = new ModelNode();
+            target.get(ClientConstants.OP_ADDR).set(addresses.get(i));
+            target.get(ClientConstants.OUTCOME).set(item.get(ClientConstants.OUTCOME));
+            if (Operations.isSuccessfulOutcome(item)) {
+                target.get(ClientConstants.RESULT).set(item.get(ClientConstants.RESULT));
+            } else {
+                success = false;
+                target.get(ClientConstants.FAILURE_DESCRIPTION).set(Operations.getFailureDescription(item));
+            }
+            list.add(target);
+        }
+        result.get(ClientConstants.OUTCOME).set(success ? ClientConstants.SUCCESS : "failed");
+        if (!success) {
+            result.get(ClientConstants.FAILURE_DESCRIPTION).set("Operation failed for one or more targets");
+        }
+        return result;
+    }
+
+    /**
+     * Resolves the wildcard address elements.
+     *
+     * @param address the address with wildcards.
+     * @return the list of the resolved addresses.
+     * @throws DatabaseException if the method fails.
+     */
+    private List<ModelNode> resolve(ModelNode address) throws DatabaseException {
+        List<ModelNode> result = Collections.singletonList(new ModelNode().setEmptyList());
+        for (Property element : address.asPropertyList()) {
+            String type = element.getName();
+            String value = element.getValue().asString();
+            List<ModelNode> next = new ArrayList<>();
+            for (ModelNode parent : result) {
+                List<String> names = WILDCARD.equals(value) ? names(parent, type) : Collections.singletonList(value);
+                for (String name : names) {
+                    ModelNode tmp = parent.clone();
+                    tmp.add(type, name);
+                    next.add(tmp);
+                }
+            }
+            result = next;
+        }
+        return result;
+    }
+
+    private List<String> names(ModelNode parent, String type) throws DatabaseException {
+        Map<String, List<String>> types = children.computeIfAbsent(parent.clone(), k -> new ConcurrentHashMap<>());
+        List<String> result = types.get(type);
+        if (result != null) {
+            return result;
+        }
+        ModelNode op = Operations.createOperation(ClientConstants.READ_CHILDREN_NAMES_OPERATION, parent);
+        op.get(ClientConstants.CHILD_TYPE).set(type);
+        ModelNode node = connection.execute(op);
+        if (node == null) {
+            throw new DatabaseException("Could not resolve " + type + " of " + parent + ". The server connection is closed.");
+        }
+        if (!Operations.isSuccessfulOutcome(node)) {
+            throw new DatabaseException("Could not resolve " + type + " of " + parent + ". Error: " + Operations.getFailureDescription(node).asString());
+        }
+        result = new ArrayList<>();
+        for (ModelNode item : node.get(ClientConstants.RESULT).asList()) {
+            result.add(item.asString());
+        }
+        types.put(type, result);
+        return result;
+    }
+
+    private static ModelNode get(Future<ModelNode> future, long deadline) throws DatabaseException, TimeoutException {
+        try {
+            if (deadline == 0) {
+                return future.get();
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                future.cancel(true);
+                throw new TimeoutException();
+            }
+            return future.get(remaining, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            future.cancel(true);
+            throw ex;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException(ex);
+        } catch (ExecutionException ex) {
+            return WildflyDatabaseConnection.failure(ex.getCause() == null ? ex.getMessage() : ex.getCause().getMessage());
+        }
+    }
+}
@@ -19,13 +19,14 @@ import java.io.IOException;
 import java.io.Writer;
 import java.math.BigInteger;
 
+import java.sql.SQLException;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
-import java.util.Properties;
+import java.util.Map;
 import liquibase.CatalogAndSchema;
 import liquibase.change.Change;
 import liquibase.changelog.ChangeLogHistoryServiceFactory;
@@ -44,6 +45,7 @@ import liquibase.exception.DateParseException;
 import liquibase.exception.LiquibaseException;
 import liquibase.exception.RollbackImpossibleException;
 import liquibase.exception.StatementNotSupportedOnDatabaseException;
+import liquibase.exception.UnexpectedLiquibaseException;
 import liquibase.exception.ValidationErrors;
 import liquibase.executor.ExecutorService;
 import liquibase.ext.wildfly.executor.WildflyExecutor;
@@ -123,7 +125,11 @@ public class WildflyDatabase implements Database {
     public void setConnection(DatabaseConnection conn) {
         JdbcConnection c = (JdbcConnection) conn;
         WildflyConnection wc = (WildflyConnection) c.getWrappedConnection();
-        this.connection = new WildflyDatabaseConnection(wc);
+        try {
+            this.connection = wc.getSession();
+        } catch (SQLException ex) {
+            throw new UnexpectedLiquibaseException(ex);
+        }
     }
 
     @Override
@@ -749,8 +755,12 @@ public class WildflyDatabase implements Database {
         return connection.isCliProperties();
     }
     
-    public Properties getCliProperties() {        
+    public Map<String, String> getCliProperties() {        
         return connection.getCliProperties();
     }
 
+    public List<String> getDomainProfiles() {
+        return connection.getDomainProfiles();
+    }
+
 }
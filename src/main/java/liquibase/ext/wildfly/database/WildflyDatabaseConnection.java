@@ -16,48 +16,111 @@
 package liquibase.ext.wildfly.database;
 
 import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import liquibase.database.Database;
 import liquibase.database.DatabaseConnection;
 import liquibase.exception.DatabaseException;
+import liquibase.ext.wildfly.config.CliPropertySources;
 import liquibase.ext.wildfly.config.Config;
 import org.jboss.as.cli.CliInitializationException;
 import org.jboss.as.cli.CommandContext;
 import org.jboss.as.cli.CommandContextFactory;
+import org.jboss.as.cli.CommandFormatException;
 import org.jboss.as.cli.CommandLineException;
 import org.jboss.as.cli.impl.CommandContextConfiguration;
 import liquibase.ext.wildfly.jdbc.WildflyConnection;
 import liquibase.logging.LogFactory;
 import org.jboss.as.cli.Util;
 import org.jboss.as.cli.scriptsupport.CLI;
+import org.jboss.as.controller.client.helpers.ClientConstants;
+import org.jboss.as.controller.client.helpers.Operations;
 import org.jboss.dmr.ModelNode;
 
 /**
  * The wildfly server connection.
+ * <p>
+ * The CLI command context is owned by the {@link CommandDispatcher} thread,
+ * so the connection can be used from more than one thread. The operations
+ * executed by the model controller client do not go through the dispatcher
+ * because the client is thread safe.
+ * <p>
+ * The controller connection or the embedded server boot starts in the
+ * background when the connection is created and the first server command
+ * waits for it. The property {@code liquibase.wildfly.connect.async=false}
+ * connects in the constructor.
  * 
  * @author Andrej Petras
  */
 public class WildflyDatabaseConnection implements DatabaseConnection {
 
+    /**
+     * The URL of the offline connection without server.
+     */
+    public static final String OFFLINE = "offline";
+
+    /**
+     * The maximum reconnect backoff in milliseconds.
+     */
+    private static final long MAX_BACKOFF = 30000;
+
     private String url;
 
+    private String controller;
+
     private Properties info;
 
     private String domainProfile;
 
-    private Properties cliProperties;
+    private List<String> domainProfiles;
+
+    private List<String> lockScopes;
+
+    private Map<String, String> cliProperties;
+
+    private WildcardFanOut fanOut;
+
+    private ModelSnapshot snapshot;
+
+    private ModelCache modelCache;
+
+    private OperationTimeouts timeouts;
+
+    /**
+     * The default change set timeout in milliseconds or zero.
+     */
+    private long changeSetTimeout;
+
+    private volatile CommandContext cmdCtx = null;
+
+    /**
+     * The connection started in the background or {@code null}.
+     */
+    private volatile CompletableFuture<Void> connecting;
 
-    private CommandContext cmdCtx = null;
+    /**
+     * The dispatcher which owns the command context.
+     */
+    private CommandDispatcher dispatcher;
 
     private String username;
     
-    private int exitCode = 0;
+    private volatile int exitCode = 0;
+
+    private boolean offline;
 
     public WildflyDatabaseConnection(WildflyConnection con) {
         this.url = con.getUrl();
@@ -66,16 +129,30 @@ public class WildflyDatabaseConnection implements DatabaseConnection {
         // load domain profile
         domainProfile = info.getProperty(Config.CONFIG_BASE + ".domain.profile", "");
 
-        // load CLI properties
-        String cliPropertyFile = info.getProperty(Config.CONFIG_BASE + ".properties");                
-        if (cliPropertyFile != null) {
-            LogFactory.getLogger().info("Load CLI properties: " + cliPropertyFile);
-            cliProperties = new Properties();
-            try (InputStream in = Files.newInputStream(Paths.get(cliPropertyFile))) {
-                cliProperties.load(in);
-            } catch (Exception e) {
-                LogFactory.getLogger().severe(e.getMessage(), e);
-            }
+        // load domain profiles
+        domainProfiles = splitList(info.getProperty(Config.CONFIG_BASE + ".domain.profiles"));
+
+        // load lock scopes
+        String scopes = info.getProperty(Config.CONFIG_BASE + ".lock.scopes", System.getProperty(Config.CONFIG_BASE + ".lock.scopes", ""));
+        lockScopes = Arrays.asList(scopes.split(","));
+
+        // client side wildcard fan-out
+        if (Boolean.parseBoolean(property(Config.CONFIG_BASE + ".fan-out", "false"))) {
+            fanOut = new WildcardFanOut(this, Integer.parseInt(property(Config.CONFIG_BASE + ".fan-out.max", "16")));
+        }
+
+        // operation and change set timeouts
+        timeouts = new OperationTimeouts(info);
+        changeSetTimeout = Long.parseLong(property(Config.CONFIG_BASE + ".timeout.changeset", "0")) * 1000;
+
+        // model cache
+        modelCache = new ModelCache(Integer.parseInt(property(Config.CONFIG_BASE + ".cache.max-entries", "256")),
+                Long.parseLong(property(Config.CONFIG_BASE + ".cache.max-weight", "16000000")));
+
+        // load CLI properties, the later file overrides the earlier one
+        List<String> cliPropertyFiles = splitList(info.getProperty(Config.CONFIG_BASE + ".properties"));
+        if (!cliPropertyFiles.isEmpty()) {
+            cliProperties = CliPropertySources.load(cliPropertyFiles);
         }
         
         // open connection
@@ -83,33 +160,120 @@ public class WildflyDatabaseConnection implements DatabaseConnection {
         if (url != null) {
             tmp = url.substring(8);
         }
-        if (tmp.startsWith("embed-server")) {
-            this.exitCode = connectEmbedded(tmp);
+        if (OFFLINE.equals(tmp)) {
+            LogFactory.getLogger().info("Offline connection, the CLI commands are not executed");
+            offline = true;
         } else {
-            this.exitCode = connect(tmp);
+            if (!tmp.startsWith("embed-server")) {
+                controller = tmp;
+            }
+            final String target = tmp;
+            dispatcher = new CommandDispatcher("liquibase-wildfly-dispatcher", Integer.parseInt(property(Config.CONFIG_BASE + ".dispatcher.queue", "1024")));
+            connecting = dispatcher.submit(() -> {
+                exitCode = target.startsWith("embed-server") ? connectEmbedded(target) : connect(target);
+                return null;
+            });
+            if (!Boolean.parseBoolean(property(Config.CONFIG_BASE + ".connect.async", "true"))) {
+                awaitConnect();
+            }
+        }
+    }
+
+    /**
+     * Waits for the connection started in the background. The model cache is
+     * preloaded after the connection is open.
+     */
+    private void awaitConnect() {
+        CompletableFuture<Void> tmp = connecting;
+        if (tmp == null) {
+            return;
+        }
+        try {
+            tmp.join();
+        } catch (CompletionException ex) {
+            LogFactory.getLogger().severe("Could not connect to the server " + url, ex.getCause());
+            exitCode = 1;
+        }
+        synchronized (this) {
+            if (connecting == null) {
+                return;
+            }
+            connecting = null;
+        }
+        preload();
+    }
+
+    /**
+     * Preloads the model cache with the subsystems of the property
+     * {@code liquibase.wildfly.cache.preload}.
+     */
+    private void preload() {
+        List<String> preload = splitList(property(Config.CONFIG_BASE + ".cache.preload", ""));
+        if (exitCode == 0 && !preload.isEmpty()) {
+            preloadCache(preload);
         }
-        
     }
 
     public String getDomainProfile() {
         return domainProfile;
     }
 
+    public List<String> getDomainProfiles() {
+        return domainProfiles;
+    }
+
+    public List<String> getLockScopes() {
+        return lockScopes;
+    }
+
     public boolean isCliProperties() {
         return cliProperties != null;
     }
 
-    public Properties getCliProperties() {
+    public Map<String, String> getCliProperties() {
         return cliProperties;
     }
 
+    public ModelCache getModelCache() {
+        return modelCache;
+    }
+
+    public ModelSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public void setSnapshot(ModelSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Invalidates the snapshot of the server resources after the server
+     * changes.
+     */
+    public void invalidateSnapshot() {
+        snapshot = null;
+    }
+
+    /**
+     * Returns {@code true} for the offline connection without server.
+     *
+     * @return {@code true} for the offline connection.
+     */
+    public boolean isOffline() {
+        return offline;
+    }
+
     public int getExitCode() {
+        awaitConnect();
         return exitCode;
     }
 
     @Override
     public void close() throws DatabaseException {
         closeSession();
+        if (dispatcher != null) {
+            dispatcher.close();
+        }
     }
 
     @Override
@@ -174,6 +338,10 @@ public class WildflyDatabaseConnection implements DatabaseConnection {
 
     @Override
     public boolean isClosed() throws DatabaseException {
+        awaitConnect();
+        if (cmdCtx == null) {
+            return !offline;
+        }
         return cmdCtx.isTerminated();
     }
 
@@ -183,9 +351,18 @@ public class WildflyDatabaseConnection implements DatabaseConnection {
     }
 
     private int closeSession() {
+        awaitConnect();
         if ((cmdCtx != null)) {
-            cmdCtx.terminateSession();
-            return cmdCtx.getExitCode();
+            try {
+                return dispatcher.call(() -> {
+                    cmdCtx.terminateSession();
+                    return cmdCtx.getExitCode();
+                });
+            } catch (Exception ex) {
+                LogFactory.getLogger().debug(ex.getMessage(), ex);
+                cmdCtx.terminateSession();
+                return cmdCtx.getExitCode();
+            }
         }
         return 0;
     }
@@ -268,26 +445,358 @@ public class WildflyDatabaseConnection implements DatabaseConnection {
         return result;
     }
 
-    public void processCommands(List<String> commands) {
-        int i = 0;
+    /**
+     * Processes the CLI commands.
+     *
+     * @param commands the CLI commands.
+     * @throws DatabaseException if a command fails or the connection is lost.
+     */
+    public void processCommands(List<String> commands) throws DatabaseException {
+        processCommands(commands, null, 0);
+    }
+
+    /**
+     * Processes the CLI commands. The lost connection is reconnected and the
+     * commands continue after the last acknowledged line. The lines of a
+     * {@code batch} are acknowledged by the {@code run-batch} line and the
+     * lines of an {@code if} or {@code try} block by its {@code end-if} or
+     * {@code end-try} line. With the key the last acknowledged line is stored
+     * in the progress marker, so the retry of the failed change set resumes
+     * after the last applied line.
+     * Each command is bounded by its operation timeout and by the rest of the
+     * change set timeout.
+     *
+     * @param commands the CLI commands.
+     * @param key the change set key or {@code null}.
+     * @param timeout the change set timeout in milliseconds or zero for the
+     * default change set timeout.
+     * @throws DatabaseException if a command fails, times out or the
+     * connection is lost.
+     */
+    public void processCommands(List<String> commands, String key, long timeout) throws DatabaseException {
+        long max = timeout > 0 ? timeout : changeSetTimeout;
+        long deadline = max > 0 ? System.currentTimeMillis() + max : 0;
+        ProgressMarker marker = key == null ? null : new ProgressMarker(controller, key, commands);
+        int acknowledged = marker == null ? -1 : marker.getLast();
+        if (acknowledged >= 0) {
+            LogFactory.getLogger().info("Resume " + key + " after line " + (acknowledged + 1) + " of " + commands.size());
+        }
+        int retried = -1;
+        int i = acknowledged + 1;
         try {
-            while (checkStatus() && i < commands.size()) {
-                cmdCtx.handleSafe(commands.get(i));
+            while (i < commands.size()) {
+                if (!checkStatus() && !reconnect()) {
+                    throw new DatabaseException("The server connection is closed. Applied " + (acknowledged + 1) + " of " + commands.size() + " lines");
+                }
+                String command = commands.get(i);
+                boolean deferred;
+                try {
+                    handle(command, deadline);
+                    deferred = isDeferred();
+                } catch (CommandLineException ex) {
+                    if (retried != i && isConnectionLost(ex) && reconnect()) {
+                        retried = i;
+                        i = acknowledged + 1;
+                        continue;
+                    }
+                    throw new DatabaseException("Command " + command + " failed: " + ex.getMessage(), ex);
+                }
+                if (!deferred) {
+                    acknowledged = i;
+                    if (marker != null) {
+                        marker.acknowledge(i);
+                    }
+                }
                 ++i;
             }
+            if (marker != null) {
+                marker.delete();
+            }
+        } finally {
+            if (marker != null) {
+                try {
+                    marker.flush();
+                } catch (DatabaseException ex) {
+                    LogFactory.getLogger().warning(ex.getMessage(), ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles the CLI line. The operation with a timeout is executed
+     * asynchronously and cancelled when it times out, except in the batch or
+     * workflow mode where it goes through the command context like a command.
+     * The command with a
+     * timeout runs in the background and the session is terminated when it
+     * times out, so the next command reconnects. The wildcard {@code read-*}
+     * operation is fanned out on the client side with the same timeout and its
+     * aggregated result is printed like the CLI prints it, except in the batch
+     * or workflow mode. The wildcard writes go to the server, which applies
+     * them as a whole. The caches are invalidated before and after the line.
+     *
+     * @param command the CLI line.
+     * @param deadline the change set deadline or zero.
+     * @throws CommandLineException if the command fails.
+     * @throws DatabaseException if the wildcard operation fails or the
+     * command times out.
+     */
+    private void handle(String command, long deadline) throws CommandLineException, DatabaseException {
+        invalidateCache(command);
+        try {
+            handleLine(command, deadline);
+        } finally {
+            invalidateCache(command);
+        }
+    }
+
+    /**
+     * Handles the CLI line after the caches were invalidated.
+     *
+     * @param command the CLI line.
+     * @param deadline the change set deadline or zero.
+     * @throws CommandLineException if the command fails.
+     * @throws DatabaseException if the wildcard operation fails or the
+     * command times out.
+     */
+    private void handleLine(String command, long deadline) throws CommandLineException, DatabaseException {
+        String line = command.trim();
+        if (fanOut != null && WildcardFanOut.isWildcard(line) && !isDeferred()) {
+            ModelNode request = buildRequest(line);
+            String name = Operations.getOperationName(request);
+            if (name.startsWith("read-")) {
+                ModelNode result = fanOut.execute(request, timeout(name, deadline, command));
+                if (!Operations.isSuccessfulOutcome(result)) {
+                    throw new DatabaseException("Operation " + command + " failed: " + result.get(ClientConstants.RESULT).asString());
+                }
+                dispatch(() -> {
+                    cmdCtx.printLine(result.toString());
+                    return null;
+                });
+                return;
+            }
+        }
+        if ((timeouts.isEmpty() && deadline == 0) || line.isEmpty() || line.startsWith("#")) {
+            dispatch(command);
+            return;
+        }
+        boolean operation = line.startsWith("/") || line.startsWith(":");
+        ModelNode request = operation ? buildRequest(line) : null;
+        String name = operation ? Operations.getOperationName(request) : line.split("\\s+", 2)[0];
+        long timeout = timeout(name, deadline, command);
+        if (timeout <= 0) {
+            dispatch(command);
+        } else if (operation && !isDeferred()) {
+            execute(request, command, timeout);
+        } else {
+            handleWithTimeout(command, timeout);
+        }
+    }
+
+    /**
+     * Returns {@code true} if the command context collects the lines of a
+     * {@code batch} or of an {@code if}, {@code else} or {@code try} block.
+     * These lines must go through the command context, which runs them later
+     * or not at all.
+     *
+     * @return {@code true} in the batch or workflow mode.
+     * @throws CommandLineException if the method fails.
+     */
+    private boolean isDeferred() throws CommandLineException {
+        return dispatch(() -> cmdCtx.isBatchMode() || cmdCtx.isWorkflowMode());
+    }
+
+    /**
+     * Gets the timeout of the operation or command limited by the change set
+     * deadline.
+     *
+     * @param name the operation or command name.
+     * @param deadline the change set deadline or zero.
+     * @param command the CLI line.
+     * @return the timeout in milliseconds or zero.
+     * @throws DatabaseException if the change set deadline expired.
+     */
+    private long timeout(String name, long deadline, String command) throws DatabaseException {
+        long timeout = timeouts.getTimeout(name);
+        if (deadline > 0) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                throw new DatabaseException("The change set timeout expired before the command " + command);
+            }
+            timeout = timeout > 0 ? Math.min(timeout, remaining) : remaining;
+        }
+        return timeout;
+    }
+
+    /**
+     * Executes the operation with the timeout. The operation is cancelled
+     * when it times out.
+     *
+     * @param request the operation request.
+     * @param command the CLI line.
+     * @param timeout the timeout in milliseconds.
+     * @throws CommandLineException if the operation fails.
+     * @throws DatabaseException if the operation times out.
+     */
+    private void execute(ModelNode request, String command, long timeout) throws CommandLineException, DatabaseException {
+        Future<ModelNode> future = cmdCtx.getModelControllerClient().executeAsync(request, null);
+        ModelNode result;
+        try {
+            result = future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            future.cancel(true);
+            throw new DatabaseException("The operation " + command + " timed out after " + timeout + " ms and was cancelled");
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new DatabaseException("The operation " + command + " was interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new CommandLineException("The operation " + command + " failed", ex.getCause());
+        }
+        if (!Operations.isSuccessfulOutcome(result)) {
+            throw new CommandLineException("The operation " + command + " failed: " + Operations.getFailureDescription(result).asString());
+        }
+    }
+
+    /**
+     * Handles the CLI command with the timeout.
+     *
+     * @param command the CLI command.
+     * @param timeout the timeout in milliseconds.
+     * @throws CommandLineException if the command fails.
+     * @throws DatabaseException if the command times out.
+     */
+    private void handleWithTimeout(String command, long timeout) throws CommandLineException, DatabaseException {
+        final CommandContext ctx = cmdCtx;
+        if (dispatcher.isDispatcherThread()) {
+            ctx.handle(command);
+            return;
+        }
+        CompletableFuture<Void> future = dispatcher.submit(() -> {
+            ctx.handle(command);
+            return null;
+        });
+        try {
+            future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            LogFactory.getLogger().warning("The command " + command + " timed out after " + timeout + " ms, terminate the session");
+            ctx.terminateSession();
+            throw new DatabaseException("The command " + command + " timed out after " + timeout + " ms");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException("The command " + command + " was interrupted", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof CommandLineException) {
+                throw (CommandLineException) ex.getCause();
+            }
+            throw new CommandLineException("The command " + command + " failed", ex.getCause());
+        }
+    }
+
+    /**
+     * Handles the CLI line on the dispatcher thread.
+     *
+     * @param command the CLI line.
+     * @throws CommandLineException if the command fails.
+     */
+    private void dispatch(String command) throws CommandLineException {
+        dispatch(() -> {
+            cmdCtx.handle(command);
+            return null;
+        });
+    }
+
+    /**
+     * Runs the command context task on the dispatcher thread.
+     *
+     * @param <T> the result type.
+     * @param task the task.
+     * @return the task result.
+     * @throws CommandLineException if the task fails.
+     */
+    private <T> T dispatch(CommandDispatcher.Task<T> task) throws CommandLineException {
+        try {
+            return dispatcher.call(task);
+        } catch (CommandLineException | RuntimeException ex) {
+            throw ex;
         } catch (Exception ex) {
-            LogFactory.getLogger().severe(ex.getMessage(), ex);
+            throw new CommandLineException(ex.getMessage(), ex);
         }
     }
 
+    /**
+     * Returns {@code true} if the command failed because the connection to
+     * the controller is lost.
+     *
+     * @param ex the command exception.
+     * @return {@code true} if the connection is lost.
+     */
+    private boolean isConnectionLost(Throwable ex) {
+        if (!checkStatus() || cmdCtx.getModelControllerClient() == null) {
+            return true;
+        }
+        for (Throwable t = ex; t != null; t = t.getCause()) {
+            if (t instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reconnects the remote controller with exponential backoff. The embedded
+     * server is not reconnected.
+     *
+     * @return {@code true} if the connection is open again.
+     */
+    private boolean reconnect() {
+        if (controller == null) {
+            return false;
+        }
+        int attempts = Integer.parseInt(property(Config.CONFIG_BASE + ".reconnect.attempts", "3"));
+        long backoff = Long.parseLong(property(Config.CONFIG_BASE + ".reconnect.backoff", "1000"));
+        for (int i = 1; i <= attempts; i++) {
+            LogFactory.getLogger().warning("The connection to " + controller + " is lost, reconnect attempt " + i + " of " + attempts + " in " + backoff + " ms");
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            closeSession();
+            try {
+                exitCode = dispatcher.call(() -> connect(controller));
+            } catch (Exception ex) {
+                LogFactory.getLogger().debug(ex.getMessage(), ex);
+                exitCode = 1;
+            }
+            if (exitCode == 0 && checkStatus()) {
+                modelCache.clear();
+                if (fanOut != null) {
+                    fanOut.clear();
+                }
+                LogFactory.getLogger().info("Reconnected to " + controller);
+                return true;
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF);
+        }
+        return false;
+    }
+
     public ModelNode processCommand(String command) {
         ModelNode result = null;
         if (checkStatus()) {
             try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
                     PrintStream ps = new PrintStream(baos)) {
-                cmdCtx.captureOutput(ps);
-                cmdCtx.handle(command);
-                cmdCtx.releaseOutput();
+                dispatch(() -> {
+                    cmdCtx.captureOutput(ps);
+                    try {
+                        cmdCtx.handle(command);
+                    } finally {
+                        cmdCtx.releaseOutput();
+                    }
+                    return null;
+                });
                 String tmp = new String(baos.toByteArray(), StandardCharsets.UTF_8);
                 result = ModelNode.fromString(tmp);
             } catch (Exception ex) {
@@ -302,7 +811,289 @@ public class WildflyDatabaseConnection implements DatabaseConnection {
         return processCommand(domainProfile + command);
     }
 
+    /**
+     * Processes the CLI commands in one composite operation. The composite
+     * operation is cancelled when the change set timeout expires.
+     *
+     * @param commands the CLI commands.
+     * @param timeout the change set timeout in milliseconds or zero for the
+     * default change set timeout.
+     * @throws DatabaseException if a command is not valid or the composite
+     * operation fails or times out.
+     */
+    public void processCompositeCommands(List<String> commands, long timeout) throws DatabaseException {
+        if (!checkStatus()) {
+            reconnect();
+        }
+        List<ModelNode> steps = new ArrayList<>();
+        for (String command : commands) {
+            invalidateCache(command);
+            steps.add(buildRequest(command));
+        }
+        if (steps.isEmpty()) {
+            return;
+        }
+        try {
+            executeCompositeCommands(steps, timeout);
+        } finally {
+            for (String command : commands) {
+                invalidateCache(command);
+            }
+        }
+    }
+
+    /**
+     * Executes the composite operation with the change set timeout.
+     *
+     * @param steps the operation steps.
+     * @param timeout the change set timeout in milliseconds or zero for the
+     * default change set timeout.
+     * @throws DatabaseException if the composite operation fails or times out.
+     */
+    private void executeCompositeCommands(List<ModelNode> steps, long timeout) throws DatabaseException {
+        long max = timeout > 0 ? timeout : changeSetTimeout;
+        ModelNode result;
+        if (max > 0 && checkStatus()) {
+            try {
+                execute(createComposite(steps), "composite", max);
+                return;
+            } catch (CommandLineException ex) {
+                throw new DatabaseException("Could not execute the composite operation. Error: " + ex.getMessage(), ex);
+            }
+        }
+        result = executeComposite(steps);
+        if (result == null) {
+            throw new DatabaseException("Could not execute the composite operation. The server connection is closed.");
+        }
+        if (!Operations.isSuccessfulOutcome(result)) {
+            throw new DatabaseException("Could not execute the composite operation. Error: " + Operations.getFailureDescription(result).asString());
+        }
+    }
+
+    /**
+     * Reads the resource through the model cache. The resource is shared with
+     * the cache and must not be modified.
+     *
+     * @param address the resource address.
+     * @return the resource or undefined model node if the resource does not
+     * exist.
+     * @throws DatabaseException if the connection is closed.
+     */
+    public ModelNode readResource(ModelNode address) throws DatabaseException {
+        ModelNode result = modelCache.get(address);
+        if (result != null) {
+            return result;
+        }
+        ModelNode node = execute(Operations.createReadResourceOperation(address));
+        if (node == null) {
+            throw new DatabaseException("Could not read the resource " + address + ". The server connection is closed.");
+        }
+        result = Operations.isSuccessfulOutcome(node) ? node.get(ClientConstants.RESULT) : new ModelNode();
+        modelCache.put(address, result, false);
+        return result;
+    }
+
+    /**
+     * Preloads the recursive subtrees of the subsystems to the model cache in
+     * one composite operation.
+     *
+     * @param subsystems the subsystem names.
+     */
+    public void preloadCache(List<String> subsystems) {
+        try {
+            List<ModelNode> addresses = new ArrayList<>();
+            List<ModelNode> steps = new ArrayList<>();
+            for (String subsystem : subsystems) {
+                ModelNode address = buildDomainProfileAddress("/subsystem=" + subsystem);
+                addresses.add(address);
+                steps.add(Operations.createReadResourceOperation(address, true));
+            }
+            ModelNode node = executeComposite(steps);
+            if (node == null) {
+                return;
+            }
+            for (int i = 0; i < steps.size(); i++) {
+                ModelNode step = node.get(ClientConstants.RESULT, "step-" + (i + 1));
+                if (step.isDefined() && Operations.isSuccessfulOutcome(step)) {
+                    modelCache.put(addresses.get(i), step.get(ClientConstants.RESULT), true);
+                }
+            }
+            LogFactory.getLogger().info("Model cache preloaded " + modelCache.size() + " subsystems of " + subsystems);
+        } catch (Exception ex) {
+            LogFactory.getLogger().warning("Could not preload the model cache " + subsystems, ex);
+        }
+    }
+
+    /**
+     * Invalidates the cached resources and the cached wildcard children which
+     * the CLI line may change. The lines which are not operations clear both
+     * caches. The writes invalidate the caches before and again after they
+     * complete, so a read during the write does not leave a stale entry.
+     *
+     * @param command the CLI line.
+     */
+    public void invalidateCache(String command) {
+        if (modelCache.isEmpty() && fanOut == null) {
+            return;
+        }
+        String line = command.trim();
+        if (line.isEmpty() || line.startsWith("#") || line.equals("batch")) {
+            return;
+        }
+        if (!line.startsWith("/") && !line.startsWith(":")) {
+            clearCaches();
+            return;
+        }
+        try {
+            ModelNode op = buildRequest(line);
+            String name = Operations.getOperationName(op);
+            if (name.startsWith("read-")) {
+                return;
+            }
+            ModelNode address = Operations.getOperationAddress(op);
+            modelCache.invalidate(address);
+            if (fanOut != null) {
+                if (ClientConstants.ADD.equals(name) || ClientConstants.REMOVE_OPERATION.equals(name)) {
+                    fanOut.invalidate(address);
+                } else if (ClientConstants.COMPOSITE.equals(name)) {
+                    fanOut.clear();
+                }
+            }
+        } catch (DatabaseException ex) {
+            clearCaches();
+        }
+    }
+
+    private void clearCaches() {
+        modelCache.clear();
+        if (fanOut != null) {
+            fanOut.clear();
+        }
+    }
+
+    /**
+     * Builds the operation request from the CLI operation line.
+     *
+     * @param command the CLI operation line.
+     * @return the operation request.
+     * @throws DatabaseException if the line is not a valid operation.
+     */
+    public ModelNode buildRequest(String command) throws DatabaseException {
+        awaitConnect();
+        if (cmdCtx == null) {
+            throw new DatabaseException("Could not build the operation " + command + " without the server connection");
+        }
+        try {
+            return dispatcher.call(() -> cmdCtx.buildRequest(command));
+        } catch (CommandFormatException ex) {
+            throw new DatabaseException("Invalid operation " + command, ex);
+        } catch (Exception ex) {
+            throw new DatabaseException("Could not build the operation " + command, ex);
+        }
+    }
+
+    /**
+     * Builds the address of the domain profile resource.
+     *
+     * @param address the CLI resource address without domain profile.
+     * @return the resource address.
+     * @throws DatabaseException if the address is not valid.
+     */
+    public ModelNode buildDomainProfileAddress(String address) throws DatabaseException {
+        return Operations.getOperationAddress(buildRequest(domainProfile + address + ":" + ClientConstants.READ_RESOURCE_OPERATION));
+    }
+
+    /**
+     * Executes the operation request. The model controller client is safe to
+     * use from more than one thread.
+     *
+     * @param operation the operation request.
+     * @return the operation result.
+     */
+    public ModelNode execute(ModelNode operation) {
+        ModelNode result = null;
+        if (checkStatus()) {
+            try {
+                result = cmdCtx.getModelControllerClient().execute(operation);
+            } catch (Exception ex) {
+                LogFactory.getLogger().debug(ex.getMessage(), ex);
+                result = failure(ex.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Executes the operation request asynchronously.
+     *
+     * @param operation the operation request.
+     * @return the future operation result.
+     */
+    public Future<ModelNode> executeAsync(ModelNode operation) {
+        if (!checkStatus()) {
+            return CompletableFuture.completedFuture(failure("The server connection is closed."));
+        }
+        return cmdCtx.getModelControllerClient().executeAsync(operation, null);
+    }
+
+    /**
+     * Executes the operation requests in one composite operation.
+     *
+     * @param operations the operation requests.
+     * @return the composite operation result.
+     */
+    public ModelNode executeComposite(List<ModelNode> operations) {
+        return execute(createComposite(operations));
+    }
+
+    private static ModelNode createComposite(List<ModelNode> operations) {
+        ModelNode composite = Operations.createCompositeOperation();
+        ModelNode steps = composite.get(ClientConstants.STEPS);
+        for (ModelNode operation : operations) {
+            steps.add(operation);
+        }
+        return composite;
+    }
+
+    /**
+     * Creates the failed operation result.
+     *
+     * @param message the failure description.
+     * @return the failed operation result.
+     */
+    public static ModelNode failure(String message) {
+        ModelNode result = new ModelNode();
+        result.get(ClientConstants.OUTCOME).set("failed");
+        result.get(ClientConstants.FAILURE_DESCRIPTION).set(String.valueOf(message));
+        return result;
+    }
+
+    private String property(String name, String defaultValue) {
+        return info.getProperty(name, System.getProperty(name, defaultValue));
+    }
+
+    /**
+     * Splits the comma separated list.
+     *
+     * @param value the comma separated list.
+     * @return the list of the trimmed non empty items.
+     */
+    public static List<String> splitList(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>();
+        for (String item : value.split(",")) {
+            String tmp = item.trim();
+            if (!tmp.isEmpty()) {
+                result.add(tmp);
+            }
+        }
+        return result;
+    }
+
     public boolean checkStatus() {
-        return cmdCtx.getExitCode() == 0 && !cmdCtx.isTerminated();
+        awaitConnect();
+        return cmdCtx != null && cmdCtx.getExitCode() == 0 && !cmdCtx.isTerminated();
     }
 }
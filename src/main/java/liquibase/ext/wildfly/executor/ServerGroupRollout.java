@@ -0,0 +1,345 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.executor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import liquibase.exception.DatabaseException;
+import liquibase.ext.wildfly.database.WildflyDatabaseConnection;
+import liquibase.ext.wildfly.statement.RolloutStatement;
+import liquibase.logging.LogFactory;
+import org.jboss.as.controller.client.helpers.ClientConstants;
+import org.jboss.as.controller.client.helpers.Operations;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * The rolling reload of the server groups.
+ * <p>
+ * The started servers of the groups are loaded by one composite read of the
+ * server configurations of all hosts. The server states are read by one
+ * operation per server, so a server which does not respond does not hide the
+ * states of the others. The reads are bounded by the rollout timeout and a
+ * server whose state is not read in time counts as failed. The servers which require a reload or restart are
+ * reloaded in waves of {@code maxParallel} servers. Each server of the wave is
+ * reloaded by the blocking operation in parallel, which returns after the
+ * server is started again, and the states of the wave are polled until all
+ * servers are running or the wave times out. The next wave starts only after
+ * the previous one. The rollout stops after the wave in which the number of
+ * failed servers exceeds {@code maxFailures}.
+ *
+ * @author Andrej Petras
+ */
+public class ServerGroupRollout {
+
+    /**
+     * The first poll delay in milliseconds.
+     */
+    private static final long INITIAL_DELAY = 500;
+
+    /**
+     * The maximum poll delay in milliseconds.
+     */
+    private static final long MAX_DELAY = 5000;
+
+    /**
+     * The read children resources operation.
+     */
+    private static final String READ_CHILDREN_RESOURCES_OPERATION = "read-children-resources";
+
+    /**
+     * The running server state.
+     */
+    private static final String RUNNING = "running";
+
+    /**
+     * The suffix of the reload and restart required server states.
+     */
+    private static final String REQUIRED = "-required";
+
+    /**
+     * The restart required server state.
+     */
+    private static final String RESTART_REQUIRED = "restart-required";
+
+    /**
+     * The started server status.
+     */
+    private static final String STARTED = "STARTED";
+
+    /**
+     * The server state attribute.
+     */
+    private static final String SERVER_STATE = "server-state";
+
+    /**
+     * The connection.
+     */
+    private final WildflyDatabaseConnection connection;
+
+    /**
+     * The rollout statement.
+     */
+    private final RolloutStatement statement;
+
+    public ServerGroupRollout(WildflyDatabaseConnection connection, RolloutStatement statement) {
+        this.connection = connection;
+        this.statement = statement;
+    }
+
+    /**
+     * Reloads the servers of the server groups.
+     *
+     * @throws DatabaseException if the number of failed servers exceeds the
+     * maximum failures.
+     */
+    public void execute() throws DatabaseException {
+        List<Server> servers = servers();
+        List<Server> failed = readStates(servers, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(statement.getTimeout()));
+        if (!failed.isEmpty()) {
+            LogFactory.getLogger().warning("The states of the servers " + failed + " were not read after " + statement.getTimeout() + " seconds");
+            if (failed.size() > statement.getMaxFailures()) {
+                throw new DatabaseException("Rollout of the server groups " + statement.getServerGroups()
+                        + " stopped after " + failed.size() + " failed servers " + failed);
+            }
+        }
+        List<Server> affected = new ArrayList<>();
+        for (Server server : servers) {
+            if (!failed.contains(server) && (statement.isAll() || (server.state != null && server.state.endsWith(REQUIRED)))) {
+                affected.add(server);
+            }
+        }
+        int parallel = Math.max(1, statement.getMaxParallel());
+        int waves = (affected.size() + parallel - 1) / parallel;
+        LogFactory.getLogger().info("Rollout of the server groups " + statement.getServerGroups() + ": " + affected.size()
+                + " of " + servers.size() + " servers in " + waves + " waves");
+
+        for (int i = 0; i < affected.size(); i = i + parallel) {
+            List<Server> wave = affected.subList(i, Math.min(i + parallel, affected.size()));
+            failed.addAll(wave(wave));
+            if (failed.size() > statement.getMaxFailures()) {
+                throw new DatabaseException("Rollout of the server groups " + statement.getServerGroups()
+                        + " stopped after " + failed.size() + " failed servers " + failed);
+            }
+        }
+        if (!failed.isEmpty()) {
+            LogFactory.getLogger().warning("Rollout of the server groups " + statement.getServerGroups() + " finished with failed servers " + failed);
+        }
+    }
+
+    /**
+     * Reloads the servers of the wave and waits for the running state.
+     *
+     * @param wave the servers of the wave.
+     * @return the failed servers.
+     * @throws DatabaseException if the method fails.
+     */
+    private List<Server> wave(List<Server> wave) throws DatabaseException {
+        List<Server> pending = new ArrayList<>();
+        List<Server> failed = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        List<Future<ModelNode>> futures = new ArrayList<>();
+        for (Server server : wave) {
+            String name = RESTART_REQUIRED.equals(server.state) ? "restart" : "reload";
+            ModelNode op = Operations.createOperation(name, server.configAddress());
+            op.get("blocking").set(true);
+            names.add(name);
+            futures.add(connection.executeAsync(op));
+        }
+        LogFactory.getLogger().info("Reloading servers " + wave);
+
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(statement.getTimeout());
+        for (int i = 0; i < wave.size(); i++) {
+            Server server = wave.get(i);
+            Future<ModelNode> future = futures.get(i);
+            ModelNode result;
+            try {
+                result = future.get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ex) {
+                future.cancel(true);
+                LogFactory.getLogger().warning("The " + names.get(i) + " of the server " + server + " did not finish after " + statement.getTimeout() + " seconds");
+                failed.add(server);
+                continue;
+            } catch (InterruptedException ex) {
+                for (Future<ModelNode> item : futures) {
+                    item.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                throw new DatabaseException(ex);
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause() == null ? ex : ex.getCause();
+                result = WildflyDatabaseConnection.failure(cause.getMessage());
+            }
+            if (Operations.isSuccessfulOutcome(result)) {
+                server.state = null;
+                pending.add(server);
+            } else {
+                LogFactory.getLogger().warning("Could not " + names.get(i) + " the server " + server + ". Error: "
+                        + Operations.getFailureDescription(result).asString());
+                failed.add(server);
+            }
+        }
+
+        // the blocking operation returns after the server is started
+        long delay = INITIAL_DELAY;
+        readStates(pending, deadline);
+        pending.removeIf(server -> RUNNING.equals(server.state));
+        while (!pending.isEmpty() && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(Math.min(delay, Math.max(deadline - System.currentTimeMillis(), 0)));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new DatabaseException(ex);
+            }
+            delay = Math.min(delay * 2, MAX_DELAY);
+            readStates(pending, deadline);
+            pending.removeIf(server -> RUNNING.equals(server.state));
+        }
+        if (!pending.isEmpty()) {
+            LogFactory.getLogger().warning("Servers " + pending + " are not running after " + statement.getTimeout() + " seconds");
+            failed.addAll(pending);
+        }
+        return failed;
+    }
+
+    /**
+     * Loads the started servers of the server groups.
+     *
+     * @return the started servers.
+     * @throws DatabaseException if the method fails.
+     */
+    private List<Server> servers() throws DatabaseException {
+        ModelNode op = Operations.createOperation(ClientConstants.READ_CHILDREN_NAMES_OPERATION, new ModelNode().setEmptyList());
+        op.get(ClientConstants.CHILD_TYPE).set(ClientConstants.HOST);
+        List<String> hosts = new ArrayList<>();
+        for (ModelNode item : result(connection.execute(op)).asList()) {
+            hosts.add(item.asString());
+        }
+
+        List<ModelNode> steps = new ArrayList<>();
+        for (String host : hosts) {
+            ModelNode step = Operations.createOperation(READ_CHILDREN_RESOURCES_OPERATION, Operations.createAddress(ClientConstants.HOST, host));
+            step.get(ClientConstants.CHILD_TYPE).set("server-config");
+            step.get(ClientConstants.INCLUDE_RUNTIME).set(true);
+            steps.add(step);
+        }
+        List<Server> result = new ArrayList<>();
+        if (steps.isEmpty()) {
+            return result;
+        }
+        ModelNode node = result(connection.executeComposite(steps));
+        for (int i = 0; i < hosts.size(); i++) {
+            ModelNode step = node.get("step-" + (i + 1), ClientConstants.RESULT);
+            if (!step.isDefined()) {
+                continue;
+            }
+            for (String name : step.keys()) {
+                ModelNode config = step.get(name);
+                if (statement.getServerGroups().contains(config.get(ClientConstants.GROUP).asString())
+                        && STARTED.equals(config.get("status").asString())) {
+                    result.add(new Server(hosts.get(i), name));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the server states by one operation per server in parallel. The
+     * state of the server which does not respond is {@code null}. The reads
+     * which do not finish before the deadline are cancelled.
+     *
+     * @param servers the servers.
+     * @param deadline the deadline of the reads.
+     * @return the servers whose read did not finish before the deadline.
+     * @throws DatabaseException if the thread is interrupted.
+     */
+    private List<Server> readStates(List<Server> servers, long deadline) throws DatabaseException {
+        List<Future<ModelNode>> futures = new ArrayList<>();
+        for (Server server : servers) {
+            futures.add(connection.executeAsync(Operations.createReadAttributeOperation(server.address(), SERVER_STATE)));
+        }
+        List<Server> timedOut = new ArrayList<>();
+        for (int i = 0; i < servers.size(); i++) {
+            Future<ModelNode> future = futures.get(i);
+            ModelNode result;
+            try {
+                result = future.get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ex) {
+                future.cancel(true);
+                timedOut.add(servers.get(i));
+                result = null;
+            } catch (InterruptedException ex) {
+                for (Future<ModelNode> item : futures) {
+                    item.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                throw new DatabaseException(ex);
+            } catch (ExecutionException ex) {
+                result = null;
+            }
+            if (result != null && Operations.isSuccessfulOutcome(result)) {
+                servers.get(i).state = result.get(ClientConstants.RESULT).asString().toLowerCase();
+            } else {
+                servers.get(i).state = null;
+            }
+        }
+        return timedOut;
+    }
+
+    private static ModelNode result(ModelNode node) throws DatabaseException {
+        if (node == null) {
+            throw new DatabaseException("The server connection is closed.");
+        }
+        if (!Operations.isSuccessfulOutcome(node)) {
+            throw new DatabaseException(Operations.getFailureDescription(node).asString());
+        }
+        return node.get(ClientConstants.RESULT);
+    }
+
+    /**
+     * The server of the rollout.
+     */
+    private static class Server {
+
+        private final String host;
+
+        private final String name;
+
+        private String state;
+
+        Server(String host, String name) {
+            this.host = host;
+            this.name = name;
+        }
+
+        ModelNode address() {
+            return Operations.createAddress(ClientConstants.HOST, host, "server", name);
+        }
+
+        ModelNode configAddress() {
+            return Operations.createAddress(ClientConstants.HOST, host, "server-config", name);
+        }
+
+        @Override
+        public String toString() {
+            return host + "/" + name;
+        }
+    }
+}
@@ -23,7 +23,11 @@ import liquibase.database.Database;
 import liquibase.exception.DatabaseException;
 import liquibase.executor.jvm.JdbcExecutor;
 import liquibase.ext.wildfly.database.WildflyDatabaseConnection;
+import liquibase.ext.wildfly.service.WildflyLockService;
 import liquibase.ext.wildfly.statement.CliStatement;
+import liquibase.ext.wildfly.statement.RolloutStatement;
+import liquibase.lockservice.LockService;
+import liquibase.lockservice.LockServiceFactory;
 import liquibase.logging.LogFactory;
 import liquibase.servicelocator.LiquibaseService;
 import liquibase.sql.visitor.SqlVisitor;
@@ -120,9 +124,7 @@ public class WildflyExecutor extends JdbcExecutor {
 
     @Override
     public void execute(SqlStatement sql, List<SqlVisitor> sqlVisitors) throws DatabaseException {
-        WildflyDatabaseConnection conn = (WildflyDatabaseConnection) database.getConnection();
-        CliStatement cli = (CliStatement) sql;
-        conn.processCommands(cli.getCli());
+        process((CliStatement) sql);
     }
 
     @Override
@@ -132,12 +134,37 @@ public class WildflyExecutor extends JdbcExecutor {
 
     @Override
     public int update(SqlStatement sql, List<SqlVisitor> sqlVisitors) throws DatabaseException {
-        WildflyDatabaseConnection conn = (WildflyDatabaseConnection) database.getConnection();
-        CliStatement cli = (CliStatement) sql;
-        conn.processCommands(cli.getCli());
+        process((CliStatement) sql);
         return 1;
     }
 
+    /**
+     * Processes the CLI statement. The statement for the set of domain
+     * profiles is executed in one composite operation and the rollout
+     * statement reloads the servers of the server groups. The progress of the
+     * other statements is tracked by the change set key, so the retry resumes
+     * after the last applied line. The statement is not executed if the lease
+     * of the change log lock was lost.
+     *
+     * @param cli the CLI statement.
+     * @throws DatabaseException if the method fails.
+     */
+    protected void process(CliStatement cli) throws DatabaseException {
+        LockService lock = LockServiceFactory.getInstance().getLockService(database);
+        if (lock instanceof WildflyLockService && ((WildflyLockService) lock).isLost()) {
+            throw new DatabaseException("Change log lock lease was lost, the statement is not executed");
+        }
+        WildflyDatabaseConnection conn = (WildflyDatabaseConnection) database.getConnection();
+        conn.invalidateSnapshot();
+        if (cli instanceof RolloutStatement) {
+            new ServerGroupRollout(conn, (RolloutStatement) cli).execute();
+        } else if (cli.isProfiles()) {
+            conn.processCompositeCommands(cli.getProfileCli(), cli.getChangeSetTimeout());
+        } else {
+            conn.processCommands(cli.getCli(), cli.getChangeSetKey(), cli.getChangeSetTimeout());
+        }
+    }
+
     @Override 
     public void comment(String message) throws DatabaseException {
         LogFactory.getLogger().debug(message);
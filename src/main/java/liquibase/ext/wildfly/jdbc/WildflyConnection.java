@@ -32,7 +32,15 @@ import java.sql.Statement;
 import java.sql.Struct;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import liquibase.exception.DatabaseException;
+import liquibase.ext.wildfly.database.WildflyDatabaseConnection;
+import org.jboss.as.controller.client.helpers.Operations;
+import org.jboss.dmr.ModelNode;
 
 /**
  *
@@ -40,15 +48,44 @@ import java.util.concurrent.Executor;
  */
 public class WildflyConnection implements Connection {
 
+    /**
+     * The operation of the connection validation.
+     */
+    private static final String WHOAMI = "whoami";
+
     private String url;
 
     private Properties info;
 
+    /**
+     * The server session created by the first use.
+     */
+    private WildflyDatabaseConnection session;
+
+    private volatile boolean closed;
+
     public WildflyConnection(String url, Properties info) {
         this.url = url;
         this.info = info;
     }
 
+    /**
+     * Gets the server session. The session is opened by the first call and
+     * shared by the statements and the liquibase database of this connection.
+     *
+     * @return the server session.
+     * @throws SQLException if the connection is closed.
+     */
+    public synchronized WildflyDatabaseConnection getSession() throws SQLException {
+        if (closed) {
+            throw new SQLException("The connection is closed.");
+        }
+        if (session == null) {
+            session = new WildflyDatabaseConnection(this);
+        }
+        return session;
+    }
+
     public Properties getInfo() {
         return info;
     }
@@ -59,12 +96,14 @@ public class WildflyConnection implements Connection {
 
     @Override
     public Statement createStatement() throws SQLException {
-        return null;
+        checkClosed();
+        return new WildflyStatement(this);
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql) throws SQLException {
-        return null;
+        checkClosed();
+        return new WildflyPreparedStatement(this, sql);
     }
 
     @Override
@@ -97,13 +136,32 @@ public class WildflyConnection implements Connection {
     }
 
     @Override
-    public void close() throws SQLException {
-
+    public synchronized void close() throws SQLException {
+        closed = true;
+        if (session != null) {
+            try {
+                session.close();
+            } catch (DatabaseException ex) {
+                throw new SQLException(ex.getMessage(), ex);
+            }
+            session = null;
+        }
     }
 
     @Override
     public boolean isClosed() throws SQLException {
-        return true;
+        return closed;
+    }
+
+    /**
+     * Checks if the connection is closed.
+     *
+     * @throws SQLException if the connection is closed.
+     */
+    private void checkClosed() throws SQLException {
+        if (closed) {
+            throw new SQLException("The connection is closed.");
+        }
     }
 
     @Override
@@ -149,12 +207,12 @@ public class WildflyConnection implements Connection {
 
     @Override
     public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
-        return null;
+        return createStatement();
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
-        return null;
+        return prepareStatement(sql);
     }
 
     @Override
@@ -200,12 +258,12 @@ public class WildflyConnection implements Connection {
 
     @Override
     public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
-        return null;
+        return createStatement();
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
-        return null;
+        return prepareStatement(sql);
     }
 
     @Override
@@ -215,17 +273,17 @@ public class WildflyConnection implements Connection {
 
     @Override
     public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
-        return null;
+        return prepareStatement(sql);
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
-        return null;
+        return prepareStatement(sql);
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
-        return null;
+        return prepareStatement(sql);
     }
 
     @Override
@@ -250,7 +308,30 @@ public class WildflyConnection implements Connection {
 
     @Override
     public boolean isValid(int timeout) throws SQLException {
-        return false;
+        if (timeout < 0) {
+            throw new SQLException("Invalid timeout " + timeout);
+        }
+        if (closed) {
+            return false;
+        }
+        WildflyDatabaseConnection tmp = getSession();
+        if (!tmp.checkStatus()) {
+            return false;
+        }
+        Future<ModelNode> future = tmp.executeAsync(Operations.createOperation(WHOAMI));
+        try {
+            ModelNode result = timeout == 0 ? future.get() : future.get(timeout, TimeUnit.SECONDS);
+            return Operations.isSuccessfulOutcome(result);
+        } catch (TimeoutException ex) {
+            future.cancel(true);
+            return false;
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException ex) {
+            return false;
+        }
     }
 
     @Override
@@ -305,12 +386,18 @@ public class WildflyConnection implements Connection {
 
     @Override
     public <T> T unwrap(Class<T> iface) throws SQLException {
-        return null;
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        if (iface.isInstance(session)) {
+            return iface.cast(session);
+        }
+        throw new SQLException("Not a wrapper for " + iface);
     }
 
     @Override
     public boolean isWrapperFor(Class<?> iface) throws SQLException {
-        return false;
+        return iface.isInstance(this) || iface.isInstance(session);
     }
 
 }
@@ -0,0 +1,521 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.jdbc;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+import liquibase.logging.LogFactory;
+
+/**
+ * The data source with the bounded pool of the server sessions.
+ * <p>
+ * The pooled connection returns to the pool when it is closed. The new
+ * connection is validated by the {@code whoami} operation before it is handed
+ * out, so a failed connect or authentication never enters the pool. The idle
+ * connection is validated the same way before it is borrowed when it was idle
+ * longer than the validation interval. The
+ * connection older than the maximum lifetime or idle longer than the idle
+ * timeout is closed.
+ *
+ * @author Andrej Petras
+ */
+public class WildflyDataSource implements DataSource, AutoCloseable {
+
+    /**
+     * The connection URL.
+     */
+    private String url;
+
+    /**
+     * The connection properties.
+     */
+    private Properties properties = new Properties();
+
+    /**
+     * The maximum number of connections.
+     */
+    private int maxPoolSize = 8;
+
+    /**
+     * The maximum lifetime of the connection in milliseconds.
+     */
+    private long maxLifetime = TimeUnit.MINUTES.toMillis(30);
+
+    /**
+     * The idle timeout in milliseconds.
+     */
+    private long idleTimeout = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * The idle time in milliseconds after which the connection is validated
+     * before it is borrowed.
+     */
+    private long validationInterval = TimeUnit.SECONDS.toMillis(5);
+
+    /**
+     * The validation timeout in seconds.
+     */
+    private int validationTimeout = 5;
+
+    /**
+     * The wait time for the free connection in seconds.
+     */
+    private int loginTimeout = 30;
+
+    /**
+     * The idle connections, the last returned connection first.
+     */
+    private final LinkedList<Pooled> idle = new LinkedList<>();
+
+    /**
+     * The connection permits.
+     */
+    private Semaphore permits;
+
+    /**
+     * The idle connection eviction.
+     */
+    private ScheduledExecutorService eviction;
+
+    private PrintWriter logWriter;
+
+    private volatile boolean closed;
+
+    public WildflyDataSource() {
+    }
+
+    public WildflyDataSource(String url, Properties properties) {
+        this.url = url;
+        if (properties != null) {
+            this.properties = properties;
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("The data source is closed.");
+        }
+        Semaphore tmp = start();
+        try {
+            if (!tmp.tryAcquire(loginTimeout, TimeUnit.SECONDS)) {
+                throw new SQLTimeoutException("No free connection after " + loginTimeout + " s, the pool size is " + maxPoolSize);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the connection", ex);
+        }
+        try {
+            Pooled pooled = borrow();
+            if (pooled == null) {
+                pooled = new Pooled(new WildflyConnection(url, properties));
+                if (!pooled.isValid(validationTimeout)) {
+                    pooled.destroy("validation failed");
+                    throw new SQLException("Could not open the connection " + url);
+                }
+            }
+            return pooled.proxy();
+        } catch (SQLException | RuntimeException ex) {
+            tmp.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Set the username and password in the data source properties.");
+    }
+
+    /**
+     * Borrows the valid idle connection.
+     *
+     * @return the idle connection or {@code null}.
+     */
+    private Pooled borrow() {
+        while (true) {
+            Pooled pooled;
+            synchronized (idle) {
+                pooled = idle.pollFirst();
+            }
+            if (pooled == null) {
+                return null;
+            }
+            long now = System.currentTimeMillis();
+            if (now - pooled.created > maxLifetime) {
+                pooled.destroy("max lifetime");
+                continue;
+            }
+            if (now - pooled.returned > validationInterval && !pooled.isValid(validationTimeout)) {
+                pooled.destroy("validation failed");
+                continue;
+            }
+            return pooled;
+        }
+    }
+
+    /**
+     * Returns the connection to the pool.
+     *
+     * @param pooled the pooled connection.
+     */
+    private void release(Pooled pooled) {
+        try {
+            if (closed || System.currentTimeMillis() - pooled.created > maxLifetime || pooled.connection.isClosed()) {
+                pooled.destroy("returned");
+                return;
+            }
+            pooled.returned = System.currentTimeMillis();
+            synchronized (idle) {
+                idle.addFirst(pooled);
+            }
+        } catch (SQLException ex) {
+            pooled.destroy("returned");
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Closes the idle connections which are idle too long or too old.
+     */
+    private void evict() {
+        long now = System.currentTimeMillis();
+        List<Pooled> tmp = new ArrayList<>();
+        synchronized (idle) {
+            Iterator<Pooled> it = idle.iterator();
+            while (it.hasNext()) {
+                Pooled pooled = it.next();
+                if (now - pooled.returned > idleTimeout || now - pooled.created > maxLifetime) {
+                    it.remove();
+                    tmp.add(pooled);
+                }
+            }
+        }
+        for (Pooled pooled : tmp) {
+            pooled.destroy("evicted");
+        }
+    }
+
+    /**
+     * Starts the pool with the first connection.
+     *
+     * @return the connection permits.
+     */
+    private synchronized Semaphore start() {
+        if (permits == null) {
+            permits = new Semaphore(maxPoolSize, true);
+            eviction = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "liquibase-wildfly-pool-eviction");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = Math.max(1000, Math.min(idleTimeout, maxLifetime) / 2);
+            eviction.scheduleWithFixedDelay(this::evict, period, period, TimeUnit.MILLISECONDS);
+        }
+        return permits;
+    }
+
+    /**
+     * Closes the idle connections and the pool. The borrowed connections are
+     * closed when they are returned.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (eviction != null) {
+            eviction.shutdownNow();
+        }
+        List<Pooled> tmp;
+        synchronized (idle) {
+            tmp = new ArrayList<>(idle);
+            idle.clear();
+        }
+        for (Pooled pooled : tmp) {
+            pooled.destroy("closed");
+        }
+    }
+
+    /**
+     * Gets the number of the idle connections.
+     *
+     * @return the number of the idle connections.
+     */
+    public int getIdleCount() {
+        synchronized (idle) {
+            return idle.size();
+        }
+    }
+
+    /**
+     * Gets the number of the borrowed connections.
+     *
+     * @return the number of the borrowed connections.
+     */
+    public int getActiveCount() {
+        Semaphore tmp = permits;
+        return tmp == null ? 0 : maxPoolSize - tmp.availablePermits();
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public Properties getProperties() {
+        return properties;
+    }
+
+    public void setProperties(Properties properties) {
+        this.properties = properties;
+    }
+
+    public void setUsername(String username) {
+        properties.setProperty("username", username);
+    }
+
+    public void setPassword(String password) {
+        properties.setProperty("password", password);
+    }
+
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    public void setMaxPoolSize(int maxPoolSize) {
+        if (permits != null) {
+            throw new IllegalStateException("The pool is already started");
+        }
+        this.maxPoolSize = maxPoolSize;
+    }
+
+    public long getMaxLifetime() {
+        return maxLifetime;
+    }
+
+    public void setMaxLifetime(long maxLifetime) {
+        this.maxLifetime = maxLifetime;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public long getValidationInterval() {
+        return validationInterval;
+    }
+
+    public void setValidationInterval(long validationInterval) {
+        this.validationInterval = validationInterval;
+    }
+
+    public int getValidationTimeout() {
+        return validationTimeout;
+    }
+
+    public void setValidationTimeout(int validationTimeout) {
+        this.validationTimeout = validationTimeout;
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return logWriter;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        this.logWriter = out;
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        this.loginTimeout = seconds;
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return loginTimeout;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return Logger.getLogger(WildflyDataSource.class.getName());
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this);
+    }
+
+    /**
+     * The pooled connection.
+     */
+    private class Pooled {
+
+        private final WildflyConnection connection;
+
+        private final long created = System.currentTimeMillis();
+
+        private long returned = created;
+
+        Pooled(WildflyConnection connection) {
+            this.connection = connection;
+        }
+
+        boolean isValid(int timeout) {
+            try {
+                return connection.isValid(timeout);
+            } catch (SQLException ex) {
+                return false;
+            }
+        }
+
+        void destroy(String reason) {
+            LogFactory.getLogger().debug("Close the pooled connection " + url + ": " + reason);
+            try {
+                connection.close();
+            } catch (SQLException ex) {
+                LogFactory.getLogger().debug(ex.getMessage(), ex);
+            }
+        }
+
+        /**
+         * Creates the connection handle which returns the connection to the
+         * pool when it is closed. The statements of the handle return the
+         * handle as their connection and are closed with the handle. The
+         * {@code unwrap} of the handle returns the handle for the JDBC
+         * interfaces. The unwrapped
+         * {@link WildflyConnection} or server session belongs to the pool and
+         * must not be closed or used after the handle is closed.
+         *
+         * @return the connection handle.
+         */
+        Connection proxy() {
+            InvocationHandler handler = new InvocationHandler() {
+
+                private boolean released;
+
+                /**
+                 * The statements created by the handle.
+                 */
+                private final List<WildflyStatement> statements = new ArrayList<>();
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    switch (method.getName()) {
+                        case "close":
+                            if (!released) {
+                                released = true;
+                                closeStatements();
+                                release(Pooled.this);
+                            }
+                            return null;
+                        case "isClosed":
+                            return released || connection.isClosed();
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return "WildflyPooledConnection[" + url + "]";
+                        case "unwrap":
+                            if (((Class<?>) args[0]).isInstance(proxy)) {
+                                return proxy;
+                            }
+                            break;
+                        case "isWrapperFor":
+                            if (((Class<?>) args[0]).isInstance(proxy)) {
+                                return true;
+                            }
+                            break;
+                    }
+                    if (released) {
+                        throw new SQLException("The connection is closed.");
+                    }
+                    Object result;
+                    try {
+                        result = method.invoke(connection, args);
+                    } catch (InvocationTargetException ex) {
+                        throw ex.getCause();
+                    }
+                    if (result instanceof WildflyStatement) {
+                        WildflyStatement statement = (WildflyStatement) result;
+                        statement.setHandle((Connection) proxy);
+                        synchronized (statements) {
+                            statements.removeIf(item -> !item.isOpen());
+                            statements.add(statement);
+                        }
+                    }
+                    return result;
+                }
+
+                private void closeStatements() {
+                    List<WildflyStatement> tmp;
+                    synchronized (statements) {
+                        tmp = new ArrayList<>(statements);
+                        statements.clear();
+                    }
+                    for (WildflyStatement statement : tmp) {
+                        try {
+                            statement.close();
+                        } catch (SQLException ex) {
+                            LogFactory.getLogger().debug(ex.getMessage(), ex);
+                        }
+                    }
+                }
+            };
+            return (Connection) Proxy.newProxyInstance(WildflyDataSource.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+        }
+    }
+}
@@ -0,0 +1,421 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.jdbc;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The prepared CLI line with the {@code ?} parameters.
+ * <p>
+ * The parameters outside of the quoted text are replaced by the parameter
+ * values. The string value with the CLI special characters is quoted and the
+ * {@code null} value is replaced by {@code undefined}.
+ *
+ * @author Andrej Petras
+ */
+public class WildflyPreparedStatement extends WildflyStatement implements PreparedStatement {
+
+    /**
+     * The characters which require the quoted value.
+     */
+    private static final Pattern SPECIAL = Pattern.compile("[\\s,()\\[\\]{}=\"'\\\\]");
+
+    /**
+     * The parts of the CLI line between the parameters.
+     */
+    private final List<String> parts = new ArrayList<>();
+
+    /**
+     * The parameter values.
+     */
+    private final String[] parameters;
+
+    public WildflyPreparedStatement(WildflyConnection connection, String sql) {
+        super(connection);
+        boolean quoted = false;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c == '"' && (i == 0 || sql.charAt(i - 1) != '\\')) {
+                quoted = !quoted;
+            }
+            if (c == '?' && !quoted) {
+                parts.add(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(c);
+            }
+        }
+        parts.add(sb.toString());
+        parameters = new String[parts.size() - 1];
+    }
+
+    /**
+     * Creates the CLI line with the parameter values.
+     *
+     * @return the CLI line.
+     * @throws SQLException if a parameter is not set.
+     */
+    protected String getLine() throws SQLException {
+        StringBuilder sb = new StringBuilder(parts.get(0));
+        for (int i = 0; i < parameters.length; i++) {
+            if (parameters[i] == null) {
+                throw new SQLException("The parameter " + (i + 1) + " is not set.");
+            }
+            sb.append(parameters[i]).append(parts.get(i + 1));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public boolean execute() throws SQLException {
+        return execute(getLine());
+    }
+
+    @Override
+    public ResultSet executeQuery() throws SQLException {
+        return executeQuery(getLine());
+    }
+
+    @Override
+    public int executeUpdate() throws SQLException {
+        return executeUpdate(getLine());
+    }
+
+    @Override
+    public void addBatch() throws SQLException {
+        addBatch(getLine());
+    }
+
+    @Override
+    public void clearParameters() throws SQLException {
+        for (int i = 0; i < parameters.length; i++) {
+            parameters[i] = null;
+        }
+    }
+
+    /**
+     * Sets the parameter value.
+     *
+     * @param index the parameter index starting with 1.
+     * @param value the CLI value.
+     * @throws SQLException if the index is not valid.
+     */
+    private void set(int index, String value) throws SQLException {
+        if (index < 1 || index > parameters.length) {
+            throw new SQLException("Invalid parameter index " + index + ", the statement has " + parameters.length + " parameters.");
+        }
+        parameters[index - 1] = value;
+    }
+
+    /**
+     * Quotes the string value with the CLI special characters.
+     *
+     * @param value the value.
+     * @return the CLI value.
+     */
+    private static String quote(String value) {
+        if (value == null) {
+            return "undefined";
+        }
+        if (!value.isEmpty() && !SPECIAL.matcher(value).find()) {
+            return value;
+        }
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static SQLException unsupported() {
+        return new SQLFeatureNotSupportedException("The parameter type is not supported.");
+    }
+
+    @Override
+    public void setNull(int parameterIndex, int sqlType) throws SQLException {
+        set(parameterIndex, "undefined");
+    }
+
+    @Override
+    public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException {
+        set(parameterIndex, "undefined");
+    }
+
+    @Override
+    public void setBoolean(int parameterIndex, boolean x) throws SQLException {
+        set(parameterIndex, Boolean.toString(x));
+    }
+
+    @Override
+    public void setByte(int parameterIndex, byte x) throws SQLException {
+        set(parameterIndex, Byte.toString(x));
+    }
+
+    @Override
+    public void setShort(int parameterIndex, short x) throws SQLException {
+        set(parameterIndex, Short.toString(x));
+    }
+
+    @Override
+    public void setInt(int parameterIndex, int x) throws SQLException {
+        set(parameterIndex, Integer.toString(x));
+    }
+
+    @Override
+    public void setLong(int parameterIndex, long x) throws SQLException {
+        set(parameterIndex, Long.toString(x));
+    }
+
+    @Override
+    public void setFloat(int parameterIndex, float x) throws SQLException {
+        set(parameterIndex, Float.toString(x));
+    }
+
+    @Override
+    public void setDouble(int parameterIndex, double x) throws SQLException {
+        set(parameterIndex, Double.toString(x));
+    }
+
+    @Override
+    public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException {
+        set(parameterIndex, x == null ? "undefined" : x.toPlainString());
+    }
+
+    @Override
+    public void setString(int parameterIndex, String x) throws SQLException {
+        set(parameterIndex, quote(x));
+    }
+
+    @Override
+    public void setNString(int parameterIndex, String value) throws SQLException {
+        setString(parameterIndex, value);
+    }
+
+    @Override
+    public void setBytes(int parameterIndex, byte[] x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void setDate(int parameterIndex, Date x) throws SQLException {
+        set(parameterIndex, quote(x == null ? null : x.toString()));
+    }
+
+    @Override
+    public void setDate(int parameterIndex, Date x, Calendar cal) throws SQLException {
+        setDate(parameterIndex, x);
+    }
+
+    @Override
+    public void setTime(int parameterIndex, Time x) throws SQLException {
+        set(parameterIndex, quote(x == null ? null : x.toString()));
+    }
+
+    @Override
+    public void setTime(int parameterIndex, Time x, Calendar cal) throws SQLException {
+        setTime(parameterIndex, x);
+    }
+
+    @Override
+    public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException {
+        set(parameterIndex, quote(x == null ? null : x.toString()));
+    }
+
+    @Override
+    public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal) throws SQLException {
+        setTimestamp(parameterIndex, x);
+    }
+
+    @Override
+    public void setURL(int parameterIndex, URL x) throws SQLException {
+        set(parameterIndex, quote(x == null ? null : x.toString()));
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x) throws SQLException {
+        if (x == null) {
+            set(parameterIndex, "undefined");
+        } else if (x instanceof Number || x instanceof Boolean) {
+            set(parameterIndex, x.toString());
+        } else {
+            set(parameterIndex, quote(x.toString()));
+        }
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException {
+        setObject(parameterIndex, x);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException {
+        setObject(parameterIndex, x);
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x, int length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void setUnicodeStream(int parameterIndex, InputStream x, int length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x, int length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader, int length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void setRef(int parameterIndex, Ref x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, Blob x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Clob x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void setArray(int parameterIndex, Array x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void setRowId(int parameterIndex, RowId x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void setNCharacterStream(int parameterIndex, Reader value, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, NClob value) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Reader reader, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, InputStream inputStream, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, Reader reader, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void setSQLXML(int parameterIndex, SQLXML xmlObject) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void setNCharacterStream(int parameterIndex, Reader value) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Reader reader) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, InputStream inputStream) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, Reader reader) throws SQLException {
+        throw unsupported();
+    }
+    @Override
+    public ResultSetMetaData getMetaData() throws SQLException {
+        return null;
+    }
+
+    @Override
+    public ParameterMetaData getParameterMetaData() throws SQLException {
+        throw new SQLFeatureNotSupportedException("The parameter metadata is not supported.");
+    }
+}
@@ -0,0 +1,1319 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.jdbc;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.Ref;
+import java.sql.RowId;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+
+/**
+ * The forward only result set over the operation result.
+ * <p>
+ * The result of the {@code read-children-resources} operation has one row
+ * per child with the {@code name} column and the attribute columns. The list
+ * result has one row per element, the object result has one row with the
+ * attribute columns and the simple result has one row with the
+ * {@code value} column. The columns are the keys of the first row, the
+ * children of one type share the attributes of their resource description.
+ * The rows are not copied, each row is taken from the result in
+ * {@link #next()} and the values are converted from the model nodes when they
+ * are read.
+ *
+ * @author Andrej Petras
+ */
+public class WildflyResultSet implements ResultSet {
+
+    /**
+     * The child name column.
+     */
+    public static final String NAME = "name";
+
+    /**
+     * The simple value column.
+     */
+    public static final String VALUE = "value";
+
+    /**
+     * The statement.
+     */
+    private final Statement statement;
+
+    /**
+     * The column names.
+     */
+    private final List<String> columns;
+
+    /**
+     * The column index by lower case column name.
+     */
+    private final Map<String, Integer> index = new HashMap<>();
+
+    /**
+     * The operation result.
+     */
+    private final ModelNode result;
+
+    /**
+     * The row names of the children result or {@code null}.
+     */
+    private final Iterator<String> names;
+
+    /**
+     * The list result flag.
+     */
+    private final boolean list;
+
+    /**
+     * The number of rows of the list or single row result.
+     */
+    private final int size;
+
+    /**
+     * The position in the list or single row result.
+     */
+    private int position;
+
+    /**
+     * The first row used for the column types.
+     */
+    private final ModelNode first;
+
+    /**
+     * The maximum number of rows or zero.
+     */
+    private final int maxRows;
+
+    /**
+     * The current row.
+     */
+    private ModelNode row;
+
+    /**
+     * The name of the current row.
+     */
+    private String rowName;
+
+    /**
+     * The current row number.
+     */
+    private int rowNumber;
+
+    /**
+     * The cursor is after the last row and stays there.
+     */
+    private boolean after;
+
+    private boolean wasNull;
+
+    private boolean closed;
+
+    private int fetchSize;
+
+    /**
+     * Creates the result set.
+     *
+     * @param statement the statement.
+     * @param result the operation result.
+     * @param children {@code true} for the result of the
+     * {@code read-children-resources} operation.
+     * @param maxRows the maximum number of rows or zero.
+     */
+    public WildflyResultSet(Statement statement, ModelNode result, boolean children, int maxRows) {
+        this.statement = statement;
+        this.result = result;
+        this.maxRows = maxRows;
+        Set<String> tmp = new LinkedHashSet<>();
+        if (children && result.getType() == ModelType.OBJECT) {
+            Set<String> keys = result.keys();
+            tmp.add(NAME);
+            names = keys.iterator();
+            list = false;
+            size = keys.size();
+            first = keys.isEmpty() ? new ModelNode() : result.get(keys.iterator().next());
+        } else if (result.getType() == ModelType.LIST) {
+            names = null;
+            list = true;
+            size = result.asInt();
+            first = size > 0 ? result.get(0) : new ModelNode();
+            if (size > 0 && first.getType() != ModelType.OBJECT) {
+                tmp.add(VALUE);
+            }
+        } else {
+            names = null;
+            list = false;
+            size = result.isDefined() ? 1 : 0;
+            first = result;
+            if (result.getType() != ModelType.OBJECT) {
+                tmp.add(VALUE);
+            }
+        }
+        if (first.getType() == ModelType.OBJECT) {
+            tmp.addAll(first.keys());
+        }
+        columns = new ArrayList<>(tmp);
+        for (int i = 0; i < columns.size(); i++) {
+            index.putIfAbsent(columns.get(i).toLowerCase(), i + 1);
+        }
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Gets the column value of the row.
+     *
+     * @param row the row.
+     * @param name the row name.
+     * @param column the column name.
+     * @return the column value.
+     */
+    private static ModelNode value(ModelNode row, String name, String column) {
+        if (name != null && NAME.equals(column)) {
+            return new ModelNode(name);
+        }
+        if (row.getType() != ModelType.OBJECT) {
+            return VALUE.equals(column) ? row : new ModelNode();
+        }
+        return row.has(column) ? row.get(column) : new ModelNode();
+    }
+
+    /**
+     * Gets the column value of the current row.
+     *
+     * @param columnIndex the column index starting with 1.
+     * @return the column value.
+     * @throws SQLException if the result set is closed or the index is not
+     * valid.
+     */
+    private ModelNode value(int columnIndex) throws SQLException {
+        checkClosed();
+        if (row == null) {
+            throw new SQLException("The result set is not on a row.");
+        }
+        if (columnIndex < 1 || columnIndex > columns.size()) {
+            throw new SQLException("Invalid column index " + columnIndex);
+        }
+        ModelNode result = value(row, rowName, columns.get(columnIndex - 1));
+        wasNull = !result.isDefined();
+        return result;
+    }
+
+    /**
+     * Gets the column type of the first row.
+     *
+     * @param columnIndex the column index starting with 1.
+     * @return the model type.
+     */
+    ModelType getColumnType(int columnIndex) {
+        String column = columns.get(columnIndex - 1);
+        if (NAME.equals(column) && names != null) {
+            return ModelType.STRING;
+        }
+        return value(first, null, column).getType();
+    }
+
+    private void checkClosed() throws SQLException {
+        if (closed) {
+            throw new SQLException("The result set is closed.");
+        }
+    }
+
+    private static SQLException unsupported() {
+        return new SQLFeatureNotSupportedException("The operation is not supported by the forward only result set.");
+    }
+
+    @Override
+    public boolean next() throws SQLException {
+        checkClosed();
+        if (after) {
+            return false;
+        }
+        boolean more = names != null ? names.hasNext() : position < size;
+        if (!more || (maxRows > 0 && rowNumber >= maxRows)) {
+            row = null;
+            rowName = null;
+            rowNumber = 0;
+            after = true;
+            return false;
+        }
+        if (names != null) {
+            rowName = names.next();
+            row = result.get(rowName);
+        } else {
+            row = list ? result.get(position) : result;
+        }
+        position++;
+        rowNumber++;
+        return true;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        row = null;
+        if (statement instanceof WildflyStatement) {
+            ((WildflyStatement) statement).closed(this);
+        }
+    }
+
+    @Override
+    public boolean wasNull() throws SQLException {
+        return wasNull;
+    }
+
+    @Override
+    public String getString(int columnIndex) throws SQLException {
+        ModelNode tmp = value(columnIndex);
+        if (!tmp.isDefined()) {
+            return null;
+        }
+        if (tmp.getType() == ModelType.OBJECT || tmp.getType() == ModelType.LIST || tmp.getType() == ModelType.PROPERTY) {
+            return tmp.toJSONString(true);
+        }
+        return tmp.asString();
+    }
+
+    @Override
+    public boolean getBoolean(int columnIndex) throws SQLException {
+        ModelNode tmp = value(columnIndex);
+        return tmp.isDefined() && tmp.asBoolean();
+    }
+
+    @Override
+    public byte getByte(int columnIndex) throws SQLException {
+        return (byte) getInt(columnIndex);
+    }
+
+    @Override
+    public short getShort(int columnIndex) throws SQLException {
+        return (short) getInt(columnIndex);
+    }
+
+    @Override
+    public int getInt(int columnIndex) throws SQLException {
+        ModelNode tmp = value(columnIndex);
+        try {
+            return tmp.isDefined() ? tmp.asInt() : 0;
+        } catch (IllegalArgumentException ex) {
+            throw new SQLException("The value " + tmp.asString() + " is not a number", ex);
+        }
+    }
+
+    @Override
+    public long getLong(int columnIndex) throws SQLException {
+        ModelNode tmp = value(columnIndex);
+        try {
+            return tmp.isDefined() ? tmp.asLong() : 0;
+        } catch (IllegalArgumentException ex) {
+            throw new SQLException("The value " + tmp.asString() + " is not a number", ex);
+        }
+    }
+
+    @Override
+    public float getFloat(int columnIndex) throws SQLException {
+        return (float) getDouble(columnIndex);
+    }
+
+    @Override
+    public double getDouble(int columnIndex) throws SQLException {
+        ModelNode tmp = value(columnIndex);
+        try {
+            return tmp.isDefined() ? tmp.asDouble() : 0;
+        } catch (IllegalArgumentException ex) {
+            throw new SQLException("The value " + tmp.asString() + " is not a number", ex);
+        }
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
+        ModelNode tmp = value(columnIndex);
+        try {
+            return tmp.isDefined() ? tmp.asBigDecimal() : null;
+        } catch (IllegalArgumentException ex) {
+            throw new SQLException("The value " + tmp.asString() + " is not a number", ex);
+        }
+    }
+
+    @Override
+    @Deprecated
+    public BigDecimal getBigDecimal(int columnIndex, int scale) throws SQLException {
+        BigDecimal tmp = getBigDecimal(columnIndex);
+        return tmp == null ? null : tmp.setScale(scale, BigDecimal.ROUND_HALF_UP);
+    }
+
+    @Override
+    public Object getObject(int columnIndex) throws SQLException {
+        ModelNode tmp = value(columnIndex);
+        switch (tmp.getType()) {
+            case UNDEFINED:
+                return null;
+            case BOOLEAN:
+                return tmp.asBoolean();
+            case INT:
+                return tmp.asInt();
+            case LONG:
+                return tmp.asLong();
+            case DOUBLE:
+                return tmp.asDouble();
+            case BIG_DECIMAL:
+                return tmp.asBigDecimal();
+            case BIG_INTEGER:
+                return tmp.asBigInteger();
+            case OBJECT:
+            case LIST:
+            case PROPERTY:
+                return tmp.toJSONString(true);
+            default:
+                return tmp.asString();
+        }
+    }
+
+    @Override
+    public <T> T getObject(int columnIndex, Class<T> type) throws SQLException {
+        if (type == ModelNode.class) {
+            return type.cast(value(columnIndex).clone());
+        }
+        if (type == String.class) {
+            return type.cast(getString(columnIndex));
+        }
+        Object tmp = getObject(columnIndex);
+        if (tmp == null || type.isInstance(tmp)) {
+            return type.cast(tmp);
+        }
+        throw new SQLException("Could not convert the column " + columnIndex + " to " + type.getName());
+    }
+
+    @Override
+    public String getNString(int columnIndex) throws SQLException {
+        return getString(columnIndex);
+    }
+
+    @Override
+    public String getString(String columnLabel) throws SQLException {
+        return getString(findColumn(columnLabel));
+    }
+
+    @Override
+    public boolean getBoolean(String columnLabel) throws SQLException {
+        return getBoolean(findColumn(columnLabel));
+    }
+
+    @Override
+    public byte getByte(String columnLabel) throws SQLException {
+        return getByte(findColumn(columnLabel));
+    }
+
+    @Override
+    public short getShort(String columnLabel) throws SQLException {
+        return getShort(findColumn(columnLabel));
+    }
+
+    @Override
+    public int getInt(String columnLabel) throws SQLException {
+        return getInt(findColumn(columnLabel));
+    }
+
+    @Override
+    public long getLong(String columnLabel) throws SQLException {
+        return getLong(findColumn(columnLabel));
+    }
+
+    @Override
+    public float getFloat(String columnLabel) throws SQLException {
+        return getFloat(findColumn(columnLabel));
+    }
+
+    @Override
+    public double getDouble(String columnLabel) throws SQLException {
+        return getDouble(findColumn(columnLabel));
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(String columnLabel) throws SQLException {
+        return getBigDecimal(findColumn(columnLabel));
+    }
+
+    @Override
+    @Deprecated
+    public BigDecimal getBigDecimal(String columnLabel, int scale) throws SQLException {
+        return getBigDecimal(findColumn(columnLabel), scale);
+    }
+
+    @Override
+    public Object getObject(String columnLabel) throws SQLException {
+        return getObject(findColumn(columnLabel));
+    }
+
+    @Override
+    public <T> T getObject(String columnLabel, Class<T> type) throws SQLException {
+        return getObject(findColumn(columnLabel), type);
+    }
+
+    @Override
+    public String getNString(String columnLabel) throws SQLException {
+        return getString(findColumn(columnLabel));
+    }
+
+    @Override
+    public int findColumn(String columnLabel) throws SQLException {
+        Integer tmp = index.get(columnLabel.toLowerCase());
+        if (tmp == null) {
+            throw new SQLException("Invalid column " + columnLabel);
+        }
+        return tmp;
+    }
+
+    @Override
+    public ResultSetMetaData getMetaData() throws SQLException {
+        return new WildflyResultSetMetaData(this);
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        return null;
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        // empty method
+    }
+
+    @Override
+    public String getCursorName() throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public boolean isBeforeFirst() throws SQLException {
+        return !after && rowNumber == 0 && size > 0;
+    }
+
+    @Override
+    public boolean isAfterLast() throws SQLException {
+        return after && size > 0;
+    }
+
+    @Override
+    public boolean isFirst() throws SQLException {
+        return rowNumber == 1;
+    }
+
+    @Override
+    public int getRow() throws SQLException {
+        return rowNumber;
+    }
+
+    @Override
+    public void setFetchDirection(int direction) throws SQLException {
+        if (direction != FETCH_FORWARD) {
+            throw unsupported();
+        }
+    }
+
+    @Override
+    public int getFetchDirection() throws SQLException {
+        return FETCH_FORWARD;
+    }
+
+    @Override
+    public void setFetchSize(int rows) throws SQLException {
+        this.fetchSize = rows;
+    }
+
+    @Override
+    public int getFetchSize() throws SQLException {
+        return fetchSize;
+    }
+
+    @Override
+    public int getType() throws SQLException {
+        return TYPE_FORWARD_ONLY;
+    }
+
+    @Override
+    public int getConcurrency() throws SQLException {
+        return CONCUR_READ_ONLY;
+    }
+
+    @Override
+    public boolean rowUpdated() throws SQLException {
+        return false;
+    }
+
+    @Override
+    public boolean rowInserted() throws SQLException {
+        return false;
+    }
+
+    @Override
+    public boolean rowDeleted() throws SQLException {
+        return false;
+    }
+
+    @Override
+    public Statement getStatement() throws SQLException {
+        return statement;
+    }
+
+    @Override
+    public int getHoldability() throws SQLException {
+        return CLOSE_CURSORS_AT_COMMIT;
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return closed;
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this);
+    }
+
+    @Override
+    public byte[] getBytes(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Date getDate(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Time getTime(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Timestamp getTimestamp(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public InputStream getAsciiStream(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public InputStream getUnicodeStream(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public InputStream getBinaryStream(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public byte[] getBytes(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Date getDate(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Time getTime(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Timestamp getTimestamp(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public InputStream getAsciiStream(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public InputStream getUnicodeStream(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public InputStream getBinaryStream(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Reader getCharacterStream(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Reader getCharacterStream(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public boolean isLast() throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void beforeFirst() throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void afterLast() throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public boolean first() throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public boolean last() throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public boolean absolute(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public boolean relative(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public boolean previous() throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateNull(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBoolean(int columnIndex, boolean x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateByte(int columnIndex, byte x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateShort(int columnIndex, short x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateInt(int columnIndex, int length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateLong(int columnIndex, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateFloat(int columnIndex, float x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateDouble(int columnIndex, double x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBigDecimal(int columnIndex, BigDecimal x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateString(int columnIndex, String x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBytes(int columnIndex, byte[] x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateDate(int columnIndex, Date x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateTime(int columnIndex, Time x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateTimestamp(int columnIndex, Timestamp x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateAsciiStream(int columnIndex, InputStream x, int length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBinaryStream(int columnIndex, InputStream x, int length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateCharacterStream(int columnIndex, Reader x, int length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateObject(int columnIndex, Object x, int scaleOrLength) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateObject(int columnIndex, Object x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateNull(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBoolean(String columnLabel, boolean x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateByte(String columnLabel, byte x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateShort(String columnLabel, short x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateInt(String columnLabel, int length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateLong(String columnLabel, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateFloat(String columnLabel, float x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateDouble(String columnLabel, double x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBigDecimal(String columnLabel, BigDecimal x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateString(String columnLabel, String x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBytes(String columnLabel, byte[] x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateDate(String columnLabel, Date x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateTime(String columnLabel, Time x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateTimestamp(String columnLabel, Timestamp x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateAsciiStream(String columnLabel, InputStream x, int length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBinaryStream(String columnLabel, InputStream x, int length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateCharacterStream(String columnLabel, Reader x, int length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateObject(String columnLabel, Object x, int scaleOrLength) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateObject(String columnLabel, Object x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void insertRow() throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateRow() throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void deleteRow() throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void refreshRow() throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void cancelRowUpdates() throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void moveToInsertRow() throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void moveToCurrentRow() throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Object getObject(int columnIndex, Map<String, Class<?>> map) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Ref getRef(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Blob getBlob(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Clob getClob(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Array getArray(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Object getObject(String columnLabel, Map<String, Class<?>> map) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Ref getRef(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Blob getBlob(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Clob getClob(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Array getArray(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Date getDate(int columnIndex, Calendar cal) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Date getDate(String columnLabel, Calendar cal) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Time getTime(int columnIndex, Calendar cal) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Time getTime(String columnLabel, Calendar cal) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Timestamp getTimestamp(int columnIndex, Calendar cal) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Timestamp getTimestamp(String columnLabel, Calendar cal) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public URL getURL(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public URL getURL(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateRef(int columnIndex, Ref x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateRef(String columnLabel, Ref x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBlob(int columnIndex, Blob x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBlob(String columnLabel, Blob x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateClob(int columnIndex, Clob x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateClob(String columnLabel, Clob x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateArray(int columnIndex, Array x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateArray(String columnLabel, Array x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public RowId getRowId(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public RowId getRowId(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateRowId(int columnIndex, RowId x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateRowId(String columnLabel, RowId x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateNString(int columnIndex, String x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateNString(String columnLabel, String x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateNClob(int columnIndex, NClob x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateNClob(String columnLabel, NClob x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public NClob getNClob(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public NClob getNClob(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public SQLXML getSQLXML(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public SQLXML getSQLXML(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateSQLXML(int columnIndex, SQLXML x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateSQLXML(String columnLabel, SQLXML x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Reader getNCharacterStream(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Reader getNCharacterStream(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateNCharacterStream(int columnIndex, Reader x, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateNCharacterStream(String columnLabel, Reader x, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateAsciiStream(int columnIndex, InputStream x, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBinaryStream(int columnIndex, InputStream x, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateCharacterStream(int columnIndex, Reader x, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateAsciiStream(String columnLabel, InputStream x, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBinaryStream(String columnLabel, InputStream x, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateCharacterStream(String columnLabel, Reader x, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBlob(int columnIndex, InputStream x, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBlob(String columnLabel, InputStream x, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateClob(int columnIndex, Reader x, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateClob(String columnLabel, Reader x, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateNClob(int columnIndex, Reader x, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateNClob(String columnLabel, Reader x, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateNCharacterStream(int columnIndex, Reader x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateNCharacterStream(String columnLabel, Reader x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateAsciiStream(int columnIndex, InputStream x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBinaryStream(int columnIndex, InputStream x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateCharacterStream(int columnIndex, Reader x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateAsciiStream(String columnLabel, InputStream x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBinaryStream(String columnLabel, InputStream x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateCharacterStream(String columnLabel, Reader x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBlob(int columnIndex, InputStream x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBlob(String columnLabel, InputStream x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateClob(int columnIndex, Reader x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateClob(String columnLabel, Reader x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateNClob(int columnIndex, Reader x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateNClob(String columnLabel, Reader x) throws SQLException {
+        throw unsupported();
+    }
+}
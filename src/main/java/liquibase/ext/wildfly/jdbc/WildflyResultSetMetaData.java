@@ -0,0 +1,204 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.jdbc;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import org.jboss.dmr.ModelType;
+
+/**
+ * The result set metadata. The column types are taken from the first row.
+ *
+ * @author Andrej Petras
+ */
+public class WildflyResultSetMetaData implements ResultSetMetaData {
+
+    /**
+     * The result set.
+     */
+    private final WildflyResultSet resultSet;
+
+    public WildflyResultSetMetaData(WildflyResultSet resultSet) {
+        this.resultSet = resultSet;
+    }
+
+    private ModelType type(int column) throws SQLException {
+        if (column < 1 || column > resultSet.getColumns().size()) {
+            throw new SQLException("Invalid column index " + column);
+        }
+        return resultSet.getColumnType(column);
+    }
+
+    @Override
+    public int getColumnCount() throws SQLException {
+        return resultSet.getColumns().size();
+    }
+
+    @Override
+    public boolean isAutoIncrement(int column) throws SQLException {
+        return false;
+    }
+
+    @Override
+    public boolean isCaseSensitive(int column) throws SQLException {
+        return true;
+    }
+
+    @Override
+    public boolean isSearchable(int column) throws SQLException {
+        return false;
+    }
+
+    @Override
+    public boolean isCurrency(int column) throws SQLException {
+        return false;
+    }
+
+    @Override
+    public int isNullable(int column) throws SQLException {
+        return WildflyResultSet.NAME.equals(getColumnName(column)) ? columnNoNulls : columnNullable;
+    }
+
+    @Override
+    public boolean isSigned(int column) throws SQLException {
+        switch (type(column)) {
+            case INT:
+            case LONG:
+            case DOUBLE:
+            case BIG_DECIMAL:
+            case BIG_INTEGER:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public int getColumnDisplaySize(int column) throws SQLException {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public String getColumnLabel(int column) throws SQLException {
+        return getColumnName(column);
+    }
+
+    @Override
+    public String getColumnName(int column) throws SQLException {
+        type(column);
+        return resultSet.getColumns().get(column - 1);
+    }
+
+    @Override
+    public String getSchemaName(int column) throws SQLException {
+        return "";
+    }
+
+    @Override
+    public int getPrecision(int column) throws SQLException {
+        return 0;
+    }
+
+    @Override
+    public int getScale(int column) throws SQLException {
+        return 0;
+    }
+
+    @Override
+    public String getTableName(int column) throws SQLException {
+        return "";
+    }
+
+    @Override
+    public String getCatalogName(int column) throws SQLException {
+        return "";
+    }
+
+    @Override
+    public int getColumnType(int column) throws SQLException {
+        switch (type(column)) {
+            case BOOLEAN:
+                return Types.BOOLEAN;
+            case INT:
+                return Types.INTEGER;
+            case LONG:
+                return Types.BIGINT;
+            case DOUBLE:
+                return Types.DOUBLE;
+            case BIG_DECIMAL:
+            case BIG_INTEGER:
+                return Types.NUMERIC;
+            default:
+                return Types.VARCHAR;
+        }
+    }
+
+    @Override
+    public String getColumnTypeName(int column) throws SQLException {
+        return type(column).name();
+    }
+
+    @Override
+    public boolean isReadOnly(int column) throws SQLException {
+        return true;
+    }
+
+    @Override
+    public boolean isWritable(int column) throws SQLException {
+        return false;
+    }
+
+    @Override
+    public boolean isDefinitelyWritable(int column) throws SQLException {
+        return false;
+    }
+
+    @Override
+    public String getColumnClassName(int column) throws SQLException {
+        switch (type(column)) {
+            case BOOLEAN:
+                return Boolean.class.getName();
+            case INT:
+                return Integer.class.getName();
+            case LONG:
+                return Long.class.getName();
+            case DOUBLE:
+                return Double.class.getName();
+            case BIG_DECIMAL:
+                return BigDecimal.class.getName();
+            case BIG_INTEGER:
+                return BigInteger.class.getName();
+            default:
+                return String.class.getName();
+        }
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this);
+    }
+}
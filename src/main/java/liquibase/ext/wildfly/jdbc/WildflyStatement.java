@@ -0,0 +1,587 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.jdbc;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import liquibase.exception.DatabaseException;
+import liquibase.ext.wildfly.database.WildflyDatabaseConnection;
+import org.jboss.as.controller.client.helpers.ClientConstants;
+import org.jboss.as.controller.client.helpers.Operations;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * The statement which executes the CLI lines.
+ * <p>
+ * The {@link #execute(String)} method executes one CLI line. The result of
+ * the {@code read-*} operation is returned as the {@link WildflyResultSet}.
+ * The {@link #executeQuery(String)} method rejects every other line before it
+ * runs. The operation
+ * lines of the batch are executed by {@link #executeBatch()} in one composite
+ * operation. With {@link #closeOnCompletion()} the statement is closed when
+ * its result set is closed.
+ *
+ * @author Andrej Petras
+ */
+public class WildflyStatement implements Statement {
+
+    /**
+     * The read children resources operation.
+     */
+    private static final String READ_CHILDREN_RESOURCES = "read-children-resources";
+
+    /**
+     * The connection.
+     */
+    protected final WildflyConnection connection;
+
+    /**
+     * The pooled connection handle of the statement or {@code null}.
+     */
+    private Connection handle;
+
+    /**
+     * The batch lines.
+     */
+    private final List<String> batch = new ArrayList<>();
+
+    /**
+     * The last operation result.
+     */
+    protected ModelNode result;
+
+    /**
+     * The result set of the last query.
+     */
+    private ResultSet resultSet;
+
+    /**
+     * The update count of the last execution.
+     */
+    private int updateCount = -1;
+
+    /**
+     * The query timeout in seconds.
+     */
+    private int queryTimeout;
+
+    private int fetchSize;
+
+    private int maxRows;
+
+    private boolean closeOnCompletion;
+
+    private boolean closed;
+
+    public WildflyStatement(WildflyConnection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Gets the last operation result.
+     *
+     * @return the last operation result or {@code null}.
+     */
+    public ModelNode getResult() {
+        return result;
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public boolean execute(String sql) throws SQLException {
+        return execute(sql, false);
+    }
+
+    /**
+     * Executes the CLI line.
+     *
+     * @param sql the CLI line.
+     * @param query {@code true} if only the {@code read-*} operation is
+     * allowed, the other lines are rejected before they run.
+     * @return {@code true} if the result is the result set.
+     * @throws SQLException if the line fails or is not allowed.
+     */
+    private boolean execute(String sql, boolean query) throws SQLException {
+        checkClosed();
+        String line = sql.trim();
+        if (query && !isOperation(line)) {
+            throw new SQLException("The line is not a read operation: " + sql);
+        }
+        WildflyDatabaseConnection session = connection.getSession();
+        // the previous result set is detached first, so its close does not
+        // complete the statement
+        ResultSet previous = resultSet;
+        resultSet = null;
+        if (previous != null) {
+            previous.close();
+        }
+        result = null;
+        updateCount = -1;
+        if (isOperation(line)) {
+            ModelNode request = buildRequest(session, line);
+            String name = Operations.getOperationName(request);
+            boolean read = name.startsWith("read-");
+            if (query && !read) {
+                throw new SQLException("The line is not a read operation: " + sql);
+            }
+            if (!read) {
+                session.invalidateSnapshot();
+                session.invalidateCache(line);
+            }
+            try {
+                result = execute(session, request, line);
+            } finally {
+                if (!read) {
+                    session.invalidateCache(line);
+                }
+            }
+            if (!Operations.isSuccessfulOutcome(result)) {
+                throw new SQLException("The operation " + line + " failed: " + Operations.getFailureDescription(result).asString());
+            }
+            if (read) {
+                resultSet = new WildflyResultSet(this, result.get(ClientConstants.RESULT), READ_CHILDREN_RESOURCES.equals(name), maxRows);
+                return true;
+            }
+        } else {
+            session.invalidateSnapshot();
+            try {
+                session.processCommands(Collections.singletonList(line));
+            } catch (DatabaseException ex) {
+                throw new SQLException(ex.getMessage(), ex);
+            }
+        }
+        updateCount = 1;
+        return false;
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public ResultSet executeQuery(String sql) throws SQLException {
+        execute(sql, true);
+        return resultSet;
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public int executeUpdate(String sql) throws SQLException {
+        execute(sql);
+        return updateCount;
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void addBatch(String sql) throws SQLException {
+        checkClosed();
+        String line = sql.trim();
+        if (!isOperation(line)) {
+            throw new SQLException("Only operations are supported in the batch: " + line);
+        }
+        batch.add(line);
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void clearBatch() throws SQLException {
+        batch.clear();
+    }
+
+    /**
+     * Executes the batch lines in one composite operation. The composite
+     * operation is rolled back when a step fails.
+     *
+     * @return the update counts.
+     * @throws SQLException if the composite operation fails.
+     */
+    @Override
+    public int[] executeBatch() throws SQLException {
+        checkClosed();
+        int[] counts = new int[batch.size()];
+        if (batch.isEmpty()) {
+            return counts;
+        }
+        WildflyDatabaseConnection session = connection.getSession();
+        session.invalidateSnapshot();
+        ModelNode composite = Operations.createCompositeOperation();
+        ModelNode steps = composite.get(ClientConstants.STEPS);
+        for (String line : batch) {
+            steps.add(buildRequest(session, line));
+            session.invalidateCache(line);
+        }
+        List<String> lines = new ArrayList<>(batch);
+        batch.clear();
+        try {
+            result = execute(session, composite, "composite");
+        } finally {
+            for (String line : lines) {
+                session.invalidateCache(line);
+            }
+        }
+        for (int i = 0; i < counts.length; i++) {
+            ModelNode step = result.get(ClientConstants.RESULT, "step-" + (i + 1));
+            counts[i] = !step.isDefined() || Operations.isSuccessfulOutcome(step) ? 1 : EXECUTE_FAILED;
+        }
+        if (!Operations.isSuccessfulOutcome(result)) {
+            if (!Arrays.stream(counts).anyMatch(c -> c == EXECUTE_FAILED)) {
+                Arrays.fill(counts, EXECUTE_FAILED);
+            }
+            throw new BatchUpdateException("The batch of " + lines.size() + " operations failed: "
+                    + Operations.getFailureDescription(result).asString(), counts);
+        }
+        return counts;
+    }
+
+    /**
+     * Executes the operation with the query timeout.
+     *
+     * @param session the session.
+     * @param request the operation request.
+     * @param line the CLI line.
+     * @return the operation result.
+     * @throws SQLException if the operation times out or the execution fails.
+     */
+    protected ModelNode execute(WildflyDatabaseConnection session, ModelNode request, String line) throws SQLException {
+        if (queryTimeout <= 0) {
+            ModelNode tmp = session.execute(request);
+            if (tmp == null) {
+                throw new SQLException("The server connection is closed.");
+            }
+            return tmp;
+        }
+        Future<ModelNode> future = session.executeAsync(request);
+        try {
+            return future.get(queryTimeout, TimeUnit.SECONDS);
+        } catch (TimeoutException ex) {
+            future.cancel(true);
+            throw new SQLTimeoutException("The operation " + line + " timed out after " + queryTimeout + " s and was cancelled");
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new SQLException("The operation " + line + " was interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new SQLException("The operation " + line + " failed", ex.getCause());
+        }
+    }
+
+    /**
+     * Builds the operation request.
+     *
+     * @param session the session.
+     * @param line the CLI operation line.
+     * @return the operation request.
+     * @throws SQLException if the line is not a valid operation.
+     */
+    protected static ModelNode buildRequest(WildflyDatabaseConnection session, String line) throws SQLException {
+        try {
+            return session.buildRequest(line);
+        } catch (DatabaseException ex) {
+            throw new SQLException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Returns {@code true} for the operation line.
+     *
+     * @param line the CLI line.
+     * @return {@code true} for the operation line.
+     */
+    protected static boolean isOperation(String line) {
+        return line.startsWith("/") || line.startsWith(":");
+    }
+
+    /**
+     * Checks if the statement is closed.
+     *
+     * @throws SQLException if the statement is closed.
+     */
+    protected void checkClosed() throws SQLException {
+        if (closed) {
+            throw new SQLException("The statement is closed.");
+        }
+    }
+
+    /**
+     * Called by the result set when it is closed. The statement is closed if
+     * it closes on completion.
+     *
+     * @param rs the closed result set.
+     * @throws SQLException if the method fails.
+     */
+    void closed(ResultSet rs) throws SQLException {
+        if (rs != resultSet) {
+            return;
+        }
+        resultSet = null;
+        if (closeOnCompletion) {
+            close();
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        ResultSet tmp = resultSet;
+        resultSet = null;
+        if (tmp != null) {
+            tmp.close();
+        }
+        batch.clear();
+        result = null;
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return closed;
+    }
+
+    /**
+     * Returns {@code true} if the statement is not closed.
+     *
+     * @return {@code true} if the statement is open.
+     */
+    boolean isOpen() {
+        return !closed;
+    }
+
+    @Override
+    public int getMaxFieldSize() throws SQLException {
+        return 0;
+    }
+
+    @Override
+    public void setMaxFieldSize(int max) throws SQLException {
+        // empty method
+    }
+
+    @Override
+    public int getMaxRows() throws SQLException {
+        return maxRows;
+    }
+
+    @Override
+    public void setMaxRows(int max) throws SQLException {
+        this.maxRows = max;
+    }
+
+    @Override
+    public void setEscapeProcessing(boolean enable) throws SQLException {
+        // empty method
+    }
+
+    @Override
+    public int getQueryTimeout() throws SQLException {
+        return queryTimeout;
+    }
+
+    @Override
+    public void setQueryTimeout(int seconds) throws SQLException {
+        this.queryTimeout = seconds;
+    }
+
+    @Override
+    public void cancel() throws SQLException {
+        throw new SQLFeatureNotSupportedException("Use the query timeout to cancel the operation.");
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        return null;
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        // empty method
+    }
+
+    @Override
+    public void setCursorName(String name) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Cursors are not supported.");
+    }
+
+    @Override
+    public ResultSet getResultSet() throws SQLException {
+        return resultSet;
+    }
+
+    @Override
+    public int getUpdateCount() throws SQLException {
+        int tmp = updateCount;
+        updateCount = -1;
+        return tmp;
+    }
+
+    @Override
+    public boolean getMoreResults() throws SQLException {
+        if (resultSet != null) {
+            resultSet.close();
+            resultSet = null;
+        }
+        updateCount = -1;
+        return false;
+    }
+
+    @Override
+    public void setFetchDirection(int direction) throws SQLException {
+        if (direction != ResultSet.FETCH_FORWARD) {
+            throw new SQLFeatureNotSupportedException("Only the forward fetch direction is supported.");
+        }
+    }
+
+    @Override
+    public int getFetchDirection() throws SQLException {
+        return ResultSet.FETCH_FORWARD;
+    }
+
+    @Override
+    public void setFetchSize(int rows) throws SQLException {
+        this.fetchSize = rows;
+    }
+
+    @Override
+    public int getFetchSize() throws SQLException {
+        return fetchSize;
+    }
+
+    @Override
+    public int getResultSetConcurrency() throws SQLException {
+        return ResultSet.CONCUR_READ_ONLY;
+    }
+
+    @Override
+    public int getResultSetType() throws SQLException {
+        return ResultSet.TYPE_FORWARD_ONLY;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return handle != null ? handle : connection;
+    }
+
+    /**
+     * Sets the pooled connection handle which created the statement, so the
+     * statement never hands out the pooled connection itself.
+     *
+     * @param handle the pooled connection handle.
+     */
+    void setHandle(Connection handle) {
+        this.handle = handle;
+    }
+
+    @Override
+    public boolean getMoreResults(int current) throws SQLException {
+        return getMoreResults();
+    }
+
+    @Override
+    public ResultSet getGeneratedKeys() throws SQLException {
+        throw new SQLFeatureNotSupportedException("Generated keys are not supported.");
+    }
+
+    @Override
+    public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        return executeUpdate(sql);
+    }
+
+    @Override
+    public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        return executeUpdate(sql);
+    }
+
+    @Override
+    public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+        return executeUpdate(sql);
+    }
+
+    @Override
+    public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+        return execute(sql);
+    }
+
+    @Override
+    public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+        return execute(sql);
+    }
+
+    @Override
+    public boolean execute(String sql, String[] columnNames) throws SQLException {
+        return execute(sql);
+    }
+
+    @Override
+    public int getResultSetHoldability() throws SQLException {
+        return ResultSet.CLOSE_CURSORS_AT_COMMIT;
+    }
+
+    @Override
+    public void setPoolable(boolean poolable) throws SQLException {
+        // empty method
+    }
+
+    @Override
+    public boolean isPoolable() throws SQLException {
+        return false;
+    }
+
+    @Override
+    public void closeOnCompletion() throws SQLException {
+        checkClosed();
+        closeOnCompletion = true;
+    }
+
+    @Override
+    public boolean isCloseOnCompletion() throws SQLException {
+        return closeOnCompletion;
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this);
+    }
+}
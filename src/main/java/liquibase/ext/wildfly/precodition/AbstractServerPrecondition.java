@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.precodition;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+import liquibase.database.Database;
+import liquibase.exception.PreconditionErrorException;
+import liquibase.exception.PreconditionFailedException;
+import liquibase.exception.ValidationErrors;
+import liquibase.exception.Warnings;
+import liquibase.ext.wildfly.database.ModelSnapshot;
+import liquibase.ext.wildfly.database.WildflyDatabaseConnection;
+import liquibase.precondition.AbstractPrecondition;
+import liquibase.precondition.Precondition;
+import liquibase.precondition.PreconditionLogic;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * The precondition of the server resource.
+ * <p>
+ * The first check collects the addresses of all server preconditions of the
+ * change log and reads them in one composite operation. The preconditions are
+ * checked against this snapshot until the executor changes the server.
+ *
+ * @author Andrej Petras
+ */
+public abstract class AbstractServerPrecondition extends AbstractPrecondition {
+
+    /**
+     * The CLI address of the resource.
+     */
+    private String address;
+
+    public String getAddress() {
+        return address;
+    }
+
+    public void setAddress(String address) {
+        this.address = address;
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public Warnings warn(Database database) {
+        return new Warnings();
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public ValidationErrors validate(Database database) {
+        ValidationErrors errors = new ValidationErrors();
+        errors.checkRequiredField("address", address);
+        return errors;
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void check(Database database, DatabaseChangeLog changeLog, ChangeSet changeSet) throws PreconditionFailedException, PreconditionErrorException {
+        String message;
+        try {
+            WildflyDatabaseConnection connection = (WildflyDatabaseConnection) database.getConnection();
+            ModelSnapshot snapshot = connection.getSnapshot();
+            if (snapshot == null) {
+                snapshot = new ModelSnapshot(connection);
+                snapshot.load(addresses(changeLog));
+                connection.setSnapshot(snapshot);
+            }
+            message = check(snapshot.get(address));
+        } catch (Exception e) {
+            throw new PreconditionErrorException(e, changeLog, this);
+        }
+        if (message != null) {
+            throw new PreconditionFailedException(message, changeLog, this);
+        }
+    }
+
+    /**
+     * Checks the resource.
+     *
+     * @param resource the resource or undefined model node if the resource
+     * does not exist.
+     * @return the failure message or {@code null}.
+     */
+    protected abstract String check(ModelNode resource);
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public String getSerializedObjectNamespace() {
+        return "http://www.liquibase.org/xml/ns/dbchangelog-ext/liquibase-wildfly";
+    }
+
+    /**
+     * Collects the addresses of the server preconditions of the change log.
+     *
+     * @param changeLog the change log.
+     * @return the set of the CLI addresses.
+     */
+    private static Set<String> addresses(DatabaseChangeLog changeLog) {
+        Set<String> result = new LinkedHashSet<>();
+        if (changeLog != null) {
+            collect(changeLog.getPreconditions(), result);
+            for (ChangeSet item : changeLog.getChangeSets()) {
+                collect(item.getPreconditions(), result);
+            }
+        }
+        return result;
+    }
+
+    private static void collect(Precondition precondition, Set<String> result) {
+        if (precondition instanceof AbstractServerPrecondition) {
+            String tmp = ((AbstractServerPrecondition) precondition).getAddress();
+            if (tmp != null) {
+                result.add(tmp);
+            }
+        } else if (precondition instanceof PreconditionLogic) {
+            for (Precondition item : ((PreconditionLogic) precondition).getNestedPreconditions()) {
+                collect(item, result);
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.precodition;
+
+import liquibase.database.Database;
+import liquibase.exception.ValidationErrors;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * The server resource attribute value precondition.
+ *
+ * @author Andrej Petras
+ */
+public class AttributeEqualsPrecondition extends AbstractServerPrecondition {
+
+    /**
+     * The attribute name.
+     */
+    private String attribute;
+
+    /**
+     * The expected attribute value. The {@code null} value expects the
+     * undefined attribute.
+     */
+    private String value;
+
+    public String getAttribute() {
+        return attribute;
+    }
+
+    public void setAttribute(String attribute) {
+        this.attribute = attribute;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public void setValue(String value) {
+        this.value = value;
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public String getName() {
+        return "attributeEquals";
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public ValidationErrors validate(Database database) {
+        ValidationErrors errors = super.validate(database);
+        errors.checkRequiredField("attribute", attribute);
+        return errors;
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    protected String check(ModelNode resource) {
+        if (!resource.isDefined()) {
+            return "Resource " + getAddress() + " does not exist";
+        }
+        // the resource is shared by the model cache, get() would add the key
+        String result = resource.hasDefined(attribute) ? resource.get(attribute).asString() : null;
+        if (value == null ? result == null : value.equals(result)) {
+            return null;
+        }
+        return "Attribute " + attribute + " of " + getAddress() + " expected '" + value + "' got '" + result + "'";
+    }
+}
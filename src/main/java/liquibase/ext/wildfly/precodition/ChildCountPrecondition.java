@@ -0,0 +1,89 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.precodition;
+
+import liquibase.database.Database;
+import liquibase.exception.ValidationErrors;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * The server resource children count precondition.
+ *
+ * @author Andrej Petras
+ */
+public class ChildCountPrecondition extends AbstractServerPrecondition {
+
+    /**
+     * The child type.
+     */
+    private String childType;
+
+    /**
+     * The expected number of children.
+     */
+    private Integer expectedCount;
+
+    public String getChildType() {
+        return childType;
+    }
+
+    public void setChildType(String childType) {
+        this.childType = childType;
+    }
+
+    public Integer getExpectedCount() {
+        return expectedCount;
+    }
+
+    public void setExpectedCount(Integer expectedCount) {
+        this.expectedCount = expectedCount;
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public String getName() {
+        return "childCount";
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public ValidationErrors validate(Database database) {
+        ValidationErrors errors = super.validate(database);
+        errors.checkRequiredField("childType", childType);
+        errors.checkRequiredField("expectedCount", expectedCount);
+        return errors;
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    protected String check(ModelNode resource) {
+        if (!resource.isDefined()) {
+            return "Resource " + getAddress() + " does not exist";
+        }
+        // the resource is shared by the model cache, get() would add the key
+        int count = resource.hasDefined(childType) ? resource.get(childType).keys().size() : 0;
+        if (expectedCount != null && expectedCount == count) {
+            return null;
+        }
+        return "Resource " + getAddress() + " expected " + expectedCount + " children of type " + childType + " got " + count;
+    }
+}
@@ -15,23 +15,19 @@
  */
 package liquibase.ext.wildfly.precodition;
 
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.LinkedList;
-import java.util.List;
 import liquibase.changelog.ChangeLogHistoryService;
 import liquibase.changelog.ChangeLogHistoryServiceFactory;
 import liquibase.changelog.ChangeSet;
 import liquibase.changelog.DatabaseChangeLog;
-import liquibase.changelog.RanChangeSet;
 import liquibase.database.Database;
 import liquibase.exception.PreconditionErrorException;
 import liquibase.exception.PreconditionFailedException;
 import liquibase.exception.ValidationErrors;
 import liquibase.exception.Warnings;
+import liquibase.ext.wildfly.service.FileChangeLogHistoryService;
+import liquibase.ext.wildfly.service.RanChangeSetFields;
 import liquibase.logging.LogFactory;
 import liquibase.precondition.AbstractPrecondition;
-import liquibase.serializer.ReflectionSerializer;
 
 /**
  * The max id check precondition for field and value.
@@ -122,32 +118,15 @@ public class MaxCheckPrecondition extends AbstractPrecondition {
     @Override
     public void check(Database database, DatabaseChangeLog changeLog, ChangeSet changeSet) throws PreconditionFailedException, PreconditionErrorException {
         try {
-            String result = null;
-            List<String> data = new LinkedList<>();
-            data.add(getDefaultId());
-
             ChangeLogHistoryService service = ChangeLogHistoryServiceFactory.getInstance().getChangeLogService(database);
-            List<RanChangeSet> changes = service.getRanChangeSets();
-            if (changes != null) {
-
-                for (RanChangeSet change : changes) {
-                    Object tmp = ReflectionSerializer.getInstance().getValue(change, field);
-                    if (tmp != null && tmp.equals(value)) {
-                        data.add(change.getId());
-                    }
-                }
+            String result;
+            if (service instanceof FileChangeLogHistoryService) {
+                result = ((FileChangeLogHistoryService) service).getMaxId(field, value);
+            } else {
+                result = RanChangeSetFields.maxId(service.getRanChangeSets(), field, value);
             }
+            result = RanChangeSetFields.max(result, getDefaultId());
 
-            if (!data.isEmpty()) {
-                Collections.sort(data, new Comparator<String>() {
-                    @Override
-                    public int compare(String o1, String o2) {
-                        return o1.compareTo(o2) * -1;
-                    }
-                });
-                result = data.get(0);
-            }
-            
             if (result == null) {
                 throw new PreconditionFailedException("No rows returned from SQL Precondition", changeLog, this);
             }
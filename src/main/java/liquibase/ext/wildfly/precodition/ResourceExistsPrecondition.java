@@ -0,0 +1,45 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.precodition;
+
+import org.jboss.dmr.ModelNode;
+
+/**
+ * The server resource exists precondition.
+ *
+ * @author Andrej Petras
+ */
+public class ResourceExistsPrecondition extends AbstractServerPrecondition {
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public String getName() {
+        return "resourceExists";
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    protected String check(ModelNode resource) {
+        if (resource.isDefined()) {
+            return null;
+        }
+        return "Resource " + getAddress() + " does not exist";
+    }
+}
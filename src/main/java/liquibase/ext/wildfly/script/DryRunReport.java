@@ -0,0 +1,487 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.script;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import liquibase.Contexts;
+import liquibase.LabelExpression;
+import liquibase.change.Change;
+import liquibase.changelog.ChangeSet;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.DatabaseException;
+import liquibase.exception.LiquibaseException;
+import liquibase.ext.wildfly.config.Config;
+import liquibase.ext.wildfly.database.WildflyDatabase;
+import liquibase.ext.wildfly.database.WildflyDatabaseConnection;
+import liquibase.ext.wildfly.jdbc.WildflyConnection;
+import liquibase.ext.wildfly.statement.CliStatement;
+import liquibase.ext.wildfly.statement.RolloutStatement;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import liquibase.resource.CompositeResourceAccessor;
+import liquibase.resource.FileSystemResourceAccessor;
+import liquibase.resource.ResourceAccessor;
+import liquibase.statement.SqlStatement;
+import liquibase.util.StreamUtil;
+import org.jboss.as.controller.client.helpers.ClientConstants;
+import org.jboss.as.controller.client.helpers.Operations;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+import org.jboss.dmr.Property;
+
+/**
+ * The dry run report of the pending change sets.
+ * <p>
+ * The operations of the pending CLI statements are parsed and their target
+ * resources are read by one composite {@code read-resource} operation and
+ * their resource descriptions by one composite
+ * {@code read-resource-description} operation. The operations are then
+ * evaluated in order against the read state, so a resource added by an
+ * earlier change set exists for the later ones. Nothing is written to the
+ * server. Each change set is reported as {@code no-op}, {@code change},
+ * {@code requires-reload} or {@code failure}. The failure is the operation
+ * which the server would reject, for example the {@code add} of an existing
+ * resource, or the operation on a resource which could not be read for other
+ * reasons than a missing resource, for example a permission error.
+ *
+ * @author Andrej Petras
+ */
+public class DryRunReport {
+
+    /**
+     * The change set result.
+     */
+    public enum Result {
+
+        NO_OP("no-op"),
+        CHANGE("change"),
+        REQUIRES_RELOAD("requires-reload"),
+        FAILURE("failure");
+
+        private final String label;
+
+        Result(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    /**
+     * The read resource description operation.
+     */
+    private static final String READ_RESOURCE_DESCRIPTION = "read-resource-description";
+
+    /**
+     * The operations description key.
+     */
+    private static final String OPERATIONS = "operations";
+
+    /**
+     * The attributes description key.
+     */
+    private static final String ATTRIBUTES = "attributes";
+
+    /**
+     * The restart required description key.
+     */
+    private static final String RESTART_REQUIRED = "restart-required";
+
+    /**
+     * The no services restart value.
+     */
+    private static final String NO_SERVICES = "no-services";
+
+    /**
+     * The failure codes of the missing resource.
+     */
+    private static final String[] NOT_FOUND = {"WFLYCTL0216", "JBAS014807"};
+
+    /**
+     * The database.
+     */
+    private final WildflyDatabase database;
+
+    /**
+     * The connection.
+     */
+    private final WildflyDatabaseConnection connection;
+
+    /**
+     * The resource state by address key. The missing resource is undefined.
+     */
+    private final Map<String, ModelNode> state = new HashMap<>();
+
+    /**
+     * The resource descriptions by the wildcard address key.
+     */
+    private final Map<String, ModelNode> descriptions = new HashMap<>();
+
+    /**
+     * The read failures other than the missing resource by address key.
+     */
+    private final Map<String, String> errors = new HashMap<>();
+
+    /**
+     * The description read failures by the wildcard address key.
+     */
+    private final Map<String, String> descriptionErrors = new HashMap<>();
+
+    public DryRunReport(WildflyDatabase database) {
+        this.database = database;
+        this.connection = (WildflyDatabaseConnection) database.getConnection();
+    }
+
+    /**
+     * Writes the dry run report of the change log.
+     *
+     * @param changeLog the change log file.
+     * @param resourceAccessor the resource accessor.
+     * @param contexts the contexts.
+     * @param labels the labels.
+     * @param output the report output.
+     * @return the change set results.
+     * @throws LiquibaseException if the method fails.
+     * @throws IOException if the report could not be written.
+     */
+    public Map<ChangeSet, Result> report(String changeLog, ResourceAccessor resourceAccessor, Contexts contexts,
+            LabelExpression labels, Writer output) throws LiquibaseException, IOException {
+        List<ChangeSet> changeSets = PendingChangeSets.find(changeLog, resourceAccessor, database,
+                Config.getChangeLogHistoryFile(), contexts, labels);
+
+        // parse the operations of the pending change sets
+        Map<ChangeSet, List<Item>> items = new LinkedHashMap<>();
+        Map<String, ModelNode> addresses = new LinkedHashMap<>();
+        Map<String, ModelNode> types = new LinkedHashMap<>();
+        for (ChangeSet changeSet : changeSets) {
+            List<Item> tmp = new ArrayList<>();
+            for (Change change : changeSet.getChanges()) {
+                SqlStatement[] statements = change.generateStatements(database);
+                if (statements == null) {
+                    continue;
+                }
+                for (SqlStatement statement : statements) {
+                    if (statement instanceof CliStatement) {
+                        parse((CliStatement) statement, tmp);
+                    }
+                }
+            }
+            for (Item item : tmp) {
+                if (item.request != null) {
+                    ModelNode address = Operations.getOperationAddress(item.request);
+                    addresses.put(key(address), address);
+                    ModelNode type = type(address);
+                    types.put(key(type), type);
+                }
+            }
+            items.put(changeSet, tmp);
+        }
+
+        // read the current state and the descriptions
+        List<ModelNode> steps = new ArrayList<>();
+        for (ModelNode address : addresses.values()) {
+            steps.add(Operations.createReadResourceOperation(address));
+        }
+        read(new ArrayList<>(addresses.keySet()), steps, state, errors);
+        steps.clear();
+        for (ModelNode type : types.values()) {
+            ModelNode op = Operations.createOperation(READ_RESOURCE_DESCRIPTION, type);
+            op.get(OPERATIONS).set(true);
+            steps.add(op);
+        }
+        read(new ArrayList<>(types.keySet()), steps, descriptions, descriptionErrors);
+
+        // evaluate the change sets
+        String separator = StreamUtil.getLineSeparator();
+        output.write("# Dry run of " + changeLog + " at " + new Date() + separator);
+        Map<ChangeSet, Result> result = new LinkedHashMap<>();
+        int[] counts = new int[Result.values().length];
+        for (Map.Entry<ChangeSet, List<Item>> entry : items.entrySet()) {
+            Result tmp = Result.NO_OP;
+            for (Item item : entry.getValue()) {
+                evaluate(item);
+                if (item.result.compareTo(tmp) > 0) {
+                    tmp = item.result;
+                }
+            }
+            result.put(entry.getKey(), tmp);
+            counts[tmp.ordinal()]++;
+            output.write("changeset " + entry.getKey().toString(false) + ": " + tmp + separator);
+            for (Item item : entry.getValue()) {
+                output.write("  " + item.result + " " + item.line + (item.note == null ? "" : " # " + item.note) + separator);
+            }
+        }
+        output.write("# " + items.size() + " change sets: " + counts[Result.NO_OP.ordinal()] + " no-op, "
+                + counts[Result.CHANGE.ordinal()] + " change, " + counts[Result.REQUIRES_RELOAD.ordinal()] + " requires-reload, "
+                + counts[Result.FAILURE.ordinal()] + " failure" + separator);
+        output.flush();
+        return result;
+    }
+
+    private void parse(CliStatement statement, List<Item> items) {
+        if (statement instanceof RolloutStatement) {
+            Item item = new Item("rollout " + ((RolloutStatement) statement).getServerGroups(), null);
+            item.result = Result.REQUIRES_RELOAD;
+            item.note = "server group rollout";
+            items.add(item);
+            return;
+        }
+        List<String> lines = statement.isProfiles() ? statement.getProfileCli() : statement.getCli();
+        for (String tmp : lines) {
+            String line = tmp.trim();
+            if (line.isEmpty() || line.startsWith("#") || line.equals("batch") || line.equals("run-batch")) {
+                continue;
+            }
+            ModelNode request = null;
+            try {
+                request = connection.buildRequest(line);
+            } catch (DatabaseException ex) {
+                // not an operation
+            }
+            items.add(new Item(line, request));
+        }
+    }
+
+    /**
+     * Evaluates the operation against the current state and applies its
+     * effect to the state.
+     *
+     * @param item the operation item.
+     */
+    private void evaluate(Item item) {
+        if (item.result != null) {
+            return;
+        }
+        if (item.request == null) {
+            item.result = Result.CHANGE;
+            item.note = "command";
+            return;
+        }
+        String name = Operations.getOperationName(item.request);
+        ModelNode address = Operations.getOperationAddress(item.request);
+        String key = key(address);
+        if (errors.containsKey(key)) {
+            item.result = Result.FAILURE;
+            item.note = "could not read the resource: " + errors.get(key);
+            return;
+        }
+        ModelNode current = state.containsKey(key) ? state.get(key) : new ModelNode();
+        ModelNode description = descriptions.containsKey(key(type(address))) ? descriptions.get(key(type(address))) : new ModelNode();
+        boolean reload = restart(description, OPERATIONS, name);
+
+        if (name.startsWith("read-")) {
+            item.result = Result.NO_OP;
+            return;
+        }
+        switch (name) {
+            case ClientConstants.ADD:
+                if (current.isDefined()) {
+                    item.result = Result.FAILURE;
+                    item.note = "duplicate resource";
+                    return;
+                }
+                ModelNode model = new ModelNode().setEmptyObject();
+                for (Property property : item.request.asPropertyList()) {
+                    if (!ClientConstants.OP.equals(property.getName()) && !ClientConstants.OP_ADDR.equals(property.getName())
+                            && !ClientConstants.OPERATION_HEADERS.equals(property.getName())) {
+                        model.get(property.getName()).set(property.getValue());
+                    }
+                }
+                state.put(key, model);
+                break;
+            case ClientConstants.REMOVE_OPERATION:
+                if (!current.isDefined()) {
+                    item.result = Result.FAILURE;
+                    item.note = "resource not found";
+                    return;
+                }
+                state.put(key, new ModelNode());
+                break;
+            case ClientConstants.WRITE_ATTRIBUTE_OPERATION:
+            case ClientConstants.UNDEFINE_ATTRIBUTE_OPERATION:
+                String attribute = item.request.get(ClientConstants.NAME).asString();
+                ModelNode value = item.request.get(ClientConstants.VALUE);
+                if (!current.isDefined()) {
+                    item.result = Result.FAILURE;
+                    item.note = "resource not found";
+                    return;
+                }
+                ModelNode old = current.hasDefined(attribute) ? current.get(attribute) : new ModelNode();
+                if (equals(old, value)) {
+                    item.result = Result.NO_OP;
+                    return;
+                }
+                item.note = attribute + ": " + (old.isDefined() ? old.asString() : "undefined") + " -> "
+                        + (value.isDefined() ? value.asString() : "undefined");
+                reload = reload || restart(description, ATTRIBUTES, attribute);
+                current.get(attribute).set(value);
+                break;
+            default:
+                break;
+        }
+        item.result = reload ? Result.REQUIRES_RELOAD : Result.CHANGE;
+        String error = descriptionErrors.get(key(type(address)));
+        if (error != null) {
+            item.note = (item.note == null ? "" : item.note + ", ") + "reload unknown: " + error;
+        }
+    }
+
+    /**
+     * Reads the resources in one composite operation. The steps without
+     * result are read one by one. The missing resource is an undefined result,
+     * the other failures are stored in the errors.
+     *
+     * @param keys the result keys.
+     * @param steps the read operations.
+     * @param result the results by key.
+     * @param failures the failures by key.
+     */
+    private void read(List<String> keys, List<ModelNode> steps, Map<String, ModelNode> result, Map<String, String> failures) {
+        if (steps.isEmpty()) {
+            return;
+        }
+        ModelNode node = connection.executeComposite(steps);
+        for (int i = 0; i < steps.size(); i++) {
+            ModelNode step = node == null ? new ModelNode() : node.get(ClientConstants.RESULT, "step-" + (i + 1));
+            if (!step.isDefined() || !Operations.isSuccessfulOutcome(step)) {
+                step = connection.execute(steps.get(i));
+            }
+            if (step != null && Operations.isSuccessfulOutcome(step)) {
+                ModelNode tmp = step.get(ClientConstants.RESULT);
+                // the wildcard read returns the list of the matching resources
+                if (tmp.getType() == ModelType.LIST) {
+                    tmp = tmp.asInt() > 0 ? tmp.get(0).get(ClientConstants.RESULT) : new ModelNode();
+                }
+                result.put(keys.get(i), tmp);
+            } else {
+                result.put(keys.get(i), new ModelNode());
+                String error = step == null ? "The server connection is closed." : Operations.getFailureDescription(step).asString();
+                if (!isNotFound(error)) {
+                    failures.put(keys.get(i), error);
+                }
+            }
+        }
+    }
+
+    private static boolean isNotFound(String error) {
+        for (String code : NOT_FOUND) {
+            if (error.contains(code)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean restart(ModelNode description, String type, String name) {
+        if (!description.hasDefined(type) || !description.get(type).hasDefined(name)
+                || !description.get(type, name).hasDefined(RESTART_REQUIRED)) {
+            return false;
+        }
+        return !NO_SERVICES.equals(description.get(type, name, RESTART_REQUIRED).asString());
+    }
+
+    private static boolean equals(ModelNode current, ModelNode value) {
+        if (!current.isDefined() || !value.isDefined()) {
+            return current.isDefined() == value.isDefined();
+        }
+        return current.asString().equals(value.asString());
+    }
+
+    /**
+     * Gets the wildcard address of the resource type.
+     *
+     * @param address the resource address.
+     * @return the wildcard address.
+     */
+    private static ModelNode type(ModelNode address) {
+        ModelNode result = new ModelNode().setEmptyList();
+        List<Property> elements = address.asPropertyList();
+        for (int i = 0; i < elements.size(); i++) {
+            Property element = elements.get(i);
+            result.add(element.getName(), i == elements.size() - 1 ? "*" : element.getValue().asString());
+        }
+        return result;
+    }
+
+    private static String key(ModelNode address) {
+        StringBuilder sb = new StringBuilder();
+        for (Property element : address.asPropertyList()) {
+            sb.append('/').append(element.getName()).append('=').append(element.getValue().asString());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The operation item.
+     */
+    private static class Item {
+
+        private final String line;
+
+        private final ModelNode request;
+
+        private Result result;
+
+        private String note;
+
+        Item(String line, ModelNode request) {
+            this.line = line;
+            this.request = request;
+        }
+    }
+
+    /**
+     * Writes the dry run report to the standard output. The arguments are the
+     * connection URL, the change log file and optional contexts. The
+     * connection properties are the system properties
+     * {@code liquibase.wildfly.*}, {@code username} and {@code password}.
+     *
+     * @param args the arguments.
+     * @throws Exception if the method fails.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Usage: DryRunReport <url> <changeLog> [contexts]");
+        }
+        Properties info = new Properties();
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith(Config.CONFIG_BASE + ".") || name.equals("username") || name.equals("password")) {
+                info.setProperty(name, System.getProperty(name));
+            }
+        }
+        WildflyDatabase database = new WildflyDatabase();
+        database.setConnection(new JdbcConnection(new WildflyConnection(args[0], info)));
+        try {
+            ResourceAccessor accessor = new CompositeResourceAccessor(new FileSystemResourceAccessor(), new ClassLoaderResourceAccessor());
+            new DryRunReport(database).report(args[1], accessor, new Contexts(args.length > 2 ? args[2] : null),
+                    new LabelExpression(), new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        } finally {
+            database.close();
+        }
+    }
+}
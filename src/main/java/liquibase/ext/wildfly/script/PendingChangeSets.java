@@ -0,0 +1,122 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.script;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import liquibase.Contexts;
+import liquibase.LabelExpression;
+import liquibase.changelog.ChangeLogParameters;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+import liquibase.changelog.RanChangeSet;
+import liquibase.changelog.filter.ContextChangeSetFilter;
+import liquibase.changelog.filter.DbmsChangeSetFilter;
+import liquibase.changelog.filter.LabelChangeSetFilter;
+import liquibase.database.Database;
+import liquibase.exception.LiquibaseException;
+import liquibase.ext.wildfly.service.FileChangeLogHistoryService;
+import liquibase.parser.ChangeLogParserFactory;
+import liquibase.resource.ResourceAccessor;
+
+/**
+ * The pending change sets of the change log. The history file is only read.
+ * A ran change set with a changed checksum which does not run on change is
+ * reported as an error.
+ *
+ * @author Andrej Petras
+ */
+public final class PendingChangeSets {
+
+    private PendingChangeSets() {
+    }
+
+    /**
+     * Parses the change log and finds the change sets which should run.
+     *
+     * @param changeLogFile the change log file.
+     * @param resourceAccessor the resource accessor.
+     * @param database the database.
+     * @param history the history file.
+     * @param contexts the contexts.
+     * @param labels the labels.
+     * @return the pending change sets in the change log order.
+     * @throws LiquibaseException if the method fails.
+     */
+    public static List<ChangeSet> find(String changeLogFile, ResourceAccessor resourceAccessor, Database database,
+            File history, Contexts contexts, LabelExpression labels) throws LiquibaseException {
+        ChangeLogParameters parameters = new ChangeLogParameters(database);
+        parameters.setContexts(contexts);
+        parameters.setLabels(labels);
+        DatabaseChangeLog changeLog = ChangeLogParserFactory.getInstance().getParser(changeLogFile, resourceAccessor)
+                .parse(changeLogFile, parameters, resourceAccessor);
+
+        Map<String, RanChangeSet> ran = new HashMap<>();
+        if (history.exists()) {
+            for (RanChangeSet item : new FileChangeLogHistoryService(database, history).getRanChangeSets()) {
+                ran.put(key(item.getChangeLog(), item.getId(), item.getAuthor()), item);
+            }
+        }
+
+        ContextChangeSetFilter contextFilter = new ContextChangeSetFilter(contexts);
+        LabelChangeSetFilter labelFilter = new LabelChangeSetFilter(labels);
+        DbmsChangeSetFilter dbmsFilter = new DbmsChangeSetFilter(database);
+        List<ChangeSet> result = new ArrayList<>();
+        for (ChangeSet changeSet : changeLog.getChangeSets()) {
+            if (contextFilter.accepts(changeSet).isAccepted() && labelFilter.accepts(changeSet).isAccepted()
+                    && dbmsFilter.accepts(changeSet).isAccepted()
+                    && shouldRun(changeSet, ran.get(key(changeSet.getFilePath(), changeSet.getId(), changeSet.getAuthor())))) {
+                result.add(changeSet);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks if the change set should run.
+     *
+     * @param changeSet the change set.
+     * @param ran the history of the change set or {@code null}.
+     * @return {@code true} if the change set should run.
+     * @throws LiquibaseException if the checksum of the ran change set changed
+     * and the change set does not run on change.
+     */
+    private static boolean shouldRun(ChangeSet changeSet, RanChangeSet ran) throws LiquibaseException {
+        if (ran == null || changeSet.shouldAlwaysRun()) {
+            return true;
+        }
+        if (changeSet.isCheckSumValid(ran.getLastCheckSum())) {
+            return false;
+        }
+        if (changeSet.shouldRunOnChange()) {
+            return true;
+        }
+        throw new LiquibaseException("Invalid checksum of the change set " + changeSet.toString(false) + " was "
+                + ran.getLastCheckSum() + " but is now " + changeSet.generateCheckSum());
+    }
+
+    private static String key(String changeLog, String id, String author) {
+        return FileChangeLogHistoryService.normalizePath(changeLog) + "::" + lower(id) + "::" + lower(author);
+    }
+
+    private static String lower(String value) {
+        return value == null ? null : value.toLowerCase(Locale.ROOT);
+    }
+}
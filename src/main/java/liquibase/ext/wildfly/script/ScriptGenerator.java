@@ -0,0 +1,215 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.script;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import liquibase.Contexts;
+import liquibase.LabelExpression;
+import liquibase.change.Change;
+import liquibase.change.ChangeFactory;
+import liquibase.changelog.ChangeSet;
+import liquibase.configuration.LiquibaseConfiguration;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.LiquibaseException;
+import liquibase.executor.LoggingExecutor;
+import liquibase.ext.wildfly.change.CliFileCache;
+import liquibase.ext.wildfly.config.Config;
+import liquibase.ext.wildfly.database.WildflyDatabase;
+import liquibase.ext.wildfly.database.WildflyDatabaseConnection;
+import liquibase.ext.wildfly.jdbc.WildflyConnection;
+import liquibase.logging.LogFactory;
+import liquibase.parser.ChangeLogParserFactory;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import liquibase.resource.CompositeResourceAccessor;
+import liquibase.resource.FileSystemResourceAccessor;
+import liquibase.resource.ResourceAccessor;
+import liquibase.servicelocator.ServiceLocator;
+import liquibase.sqlgenerator.SqlGeneratorFactory;
+import liquibase.statement.SqlStatement;
+
+/**
+ * The offline CLI script generator.
+ * <p>
+ * The targets are rendered concurrently without server connection. Each target
+ * has its own offline database, history service and logging executor, the
+ * global liquibase executor and lock registries are not used. The history is
+ * only read, so the targets can share one history file. The CLI files and the
+ * expression templates are shared by all targets and each CLI file is read
+ * once. The preconditions are not checked, as in the {@code updateSQL} mode.
+ *
+ * @author Andrej Petras
+ */
+public class ScriptGenerator {
+
+    /**
+     * The thread counter.
+     */
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    /**
+     * The number of worker threads.
+     */
+    private final int threads;
+
+    /**
+     * The resource accessor.
+     */
+    private final ResourceAccessor resourceAccessor;
+
+    public ScriptGenerator(int threads) {
+        this(threads, new CompositeResourceAccessor(new FileSystemResourceAccessor(), new ClassLoaderResourceAccessor()));
+    }
+
+    public ScriptGenerator(int threads, ResourceAccessor resourceAccessor) {
+        this.threads = Math.max(1, threads);
+        this.resourceAccessor = resourceAccessor;
+    }
+
+    /**
+     * Generates the scripts of the targets.
+     *
+     * @param targets the targets.
+     * @throws LiquibaseException if one of the targets fails.
+     */
+    public void generate(List<ScriptTarget> targets) throws LiquibaseException {
+        // initialize the liquibase singletons before the parallel run
+        ServiceLocator.getInstance();
+        LiquibaseConfiguration.getInstance();
+        ChangeFactory.getInstance();
+        ChangeLogParserFactory.getInstance();
+        SqlGeneratorFactory.getInstance();
+
+        CliFileCache.enable();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, targets.size())), r -> {
+            Thread thread = new Thread(r, "liquibase-wildfly-script-" + COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (ScriptTarget target : targets) {
+                results.add(executor.submit(() -> {
+                    generate(target);
+                    return null;
+                }));
+            }
+            List<String> errors = new ArrayList<>();
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    results.get(i).get();
+                } catch (ExecutionException ex) {
+                    LogFactory.getLogger().severe("Script generation of " + targets.get(i) + " failed", ex.getCause());
+                    errors.add(targets.get(i) + ": " + ex.getCause().getMessage());
+                }
+            }
+            if (!errors.isEmpty()) {
+                throw new LiquibaseException("Script generation failed " + errors);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new LiquibaseException(ex);
+        } finally {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            CliFileCache.disable();
+        }
+    }
+
+    /**
+     * Generates the script of the target.
+     *
+     * @param target the target.
+     * @throws Exception if the method fails.
+     */
+    protected void generate(ScriptTarget target) throws Exception {
+        long start = System.currentTimeMillis();
+        Properties info = new Properties();
+        info.putAll(target.getInfo());
+        if (target.getProperties() != null) {
+            info.setProperty(Config.CONFIG_BASE + ".properties", target.getProperties());
+        }
+        WildflyDatabase database = new WildflyDatabase();
+        database.setConnection(new JdbcConnection(new WildflyConnection("wildfly:" + WildflyDatabaseConnection.OFFLINE, info)));
+        try {
+            File history = target.getHistory() == null ? Config.getChangeLogHistoryFile() : target.getHistory();
+            List<ChangeSet> changeSets = PendingChangeSets.find(target.getChangeLog(), resourceAccessor, database, history,
+                    new Contexts(target.getContexts()), new LabelExpression(target.getLabels()));
+
+            File parent = target.getOutput().getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            int count = 0;
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(target.getOutput()), StandardCharsets.UTF_8)) {
+                LoggingExecutor output = new LoggingExecutor(null, writer, database);
+                output.comment("Update Database Script");
+                output.comment("Change Log: " + target.getChangeLog());
+                output.comment("Ran at: " + new Date());
+                for (ChangeSet changeSet : changeSets) {
+                    output.comment("Changeset " + changeSet.toString(false));
+                    for (Change change : changeSet.getChanges()) {
+                        SqlStatement[] statements = change.generateStatements(database);
+                        if (statements != null) {
+                            for (SqlStatement statement : statements) {
+                                output.execute(statement);
+                            }
+                        }
+                    }
+                    count++;
+                }
+            }
+            LogFactory.getLogger().info("Generated " + count + " change sets of " + target + " in " + (System.currentTimeMillis() - start) + " ms");
+        } finally {
+            liquibase.executor.ExecutorService.getInstance().clearExecutor(database);
+            database.close();
+        }
+    }
+
+    /**
+     * Generates the scripts of the targets. Each argument is the target
+     * definition {@code changeLog,properties,output[,history]}. The number of
+     * threads is set by the system property
+     * {@code liquibase.wildfly.script.threads}.
+     *
+     * @param args the target definitions.
+     * @throws Exception if the method fails.
+     */
+    public static void main(String[] args) throws Exception {
+        List<ScriptTarget> targets = new ArrayList<>();
+        for (String arg : args) {
+            targets.add(ScriptTarget.parse(arg));
+        }
+        new ScriptGenerator(Config.getScriptThreads()).generate(targets);
+    }
+}
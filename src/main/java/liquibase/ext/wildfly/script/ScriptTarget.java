@@ -0,0 +1,152 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.script;
+
+import java.io.File;
+import java.util.Properties;
+
+/**
+ * The script generation target. The target is the combination of the change
+ * log, the CLI properties and the history file rendered to one output file.
+ *
+ * @author Andrej Petras
+ */
+public class ScriptTarget {
+
+    /**
+     * The change log file.
+     */
+    private String changeLog;
+
+    /**
+     * The output file.
+     */
+    private File output;
+
+    /**
+     * The CLI properties file.
+     */
+    private String properties;
+
+    /**
+     * The history file or {@code null} for the default history file.
+     */
+    private File history;
+
+    /**
+     * The contexts.
+     */
+    private String contexts;
+
+    /**
+     * The labels.
+     */
+    private String labels;
+
+    /**
+     * The additional connection properties.
+     */
+    private Properties info = new Properties();
+
+    public ScriptTarget() {
+    }
+
+    public ScriptTarget(String changeLog, String properties, File output) {
+        this.changeLog = changeLog;
+        this.properties = properties;
+        this.output = output;
+    }
+
+    /**
+     * Parses the target from the {@code changeLog,properties,output[,history]}
+     * definition. The empty properties are allowed.
+     *
+     * @param value the target definition.
+     * @return the target.
+     */
+    public static ScriptTarget parse(String value) {
+        String[] tmp = value.split(",", -1);
+        if (tmp.length < 3) {
+            throw new IllegalArgumentException("Invalid target " + value + ", expected changeLog,properties,output[,history]");
+        }
+        ScriptTarget result = new ScriptTarget(tmp[0].trim(), tmp[1].trim().isEmpty() ? null : tmp[1].trim(), new File(tmp[2].trim()));
+        if (tmp.length > 3 && !tmp[3].trim().isEmpty()) {
+            result.setHistory(new File(tmp[3].trim()));
+        }
+        return result;
+    }
+
+    public String getChangeLog() {
+        return changeLog;
+    }
+
+    public void setChangeLog(String changeLog) {
+        this.changeLog = changeLog;
+    }
+
+    public File getOutput() {
+        return output;
+    }
+
+    public void setOutput(File output) {
+        this.output = output;
+    }
+
+    public String getProperties() {
+        return properties;
+    }
+
+    public void setProperties(String properties) {
+        this.properties = properties;
+    }
+
+    public File getHistory() {
+        return history;
+    }
+
+    public void setHistory(File history) {
+        this.history = history;
+    }
+
+    public String getContexts() {
+        return contexts;
+    }
+
+    public void setContexts(String contexts) {
+        this.contexts = contexts;
+    }
+
+    public String getLabels() {
+        return labels;
+    }
+
+    public void setLabels(String labels) {
+        this.labels = labels;
+    }
+
+    public Properties getInfo() {
+        return info;
+    }
+
+    public void setInfo(Properties info) {
+        this.info = info;
+    }
+
+    @Override
+    public String toString() {
+        return changeLog + " [" + properties + "] -> " + output;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+import liquibase.changelog.RanChangeSet;
+import liquibase.exception.DatabaseException;
+import liquibase.logging.LogFactory;
+
+/**
+ * The parallel checksum validator of the ran change sets.
+ * <p>
+ * The change set checksums are computed by a fixed worker pool and the
+ * results are checked in the change log order. The validation stops on the
+ * first invalid checksum. The computed checksums stay cached in the change
+ * sets and the liquibase validation does not compute them again.
+ *
+ * @author Andrej Petras
+ */
+public class CheckSumValidator {
+
+    /**
+     * The thread counter.
+     */
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    /**
+     * The number of worker threads.
+     */
+    private final int threads;
+
+    public CheckSumValidator(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Validates the checksums of the ran change sets.
+     *
+     * @param changeLog the change log.
+     * @param ranChangeSets the ran change sets.
+     * @return the first change set with invalid checksum or {@code null}.
+     * @throws DatabaseException if the method fails.
+     */
+    public ChangeSet validate(DatabaseChangeLog changeLog, List<RanChangeSet> ranChangeSets) throws DatabaseException {
+        Map<String, RanChangeSet> ran = new HashMap<>();
+        for (RanChangeSet item : ranChangeSets) {
+            if (item.getLastCheckSum() != null) {
+                ran.put(key(item.getChangeLog(), item.getId(), item.getAuthor()), item);
+            }
+        }
+
+        List<ChangeSet> changeSets = new ArrayList<>();
+        List<RanChangeSet> checkSums = new ArrayList<>();
+        for (ChangeSet changeSet : changeLog.getChangeSets()) {
+            RanChangeSet item = ran.get(key(changeSet.getFilePath(), changeSet.getId(), changeSet.getAuthor()));
+            if (item != null) {
+                changeSets.add(changeSet);
+                checkSums.add(item);
+            }
+        }
+        if (changeSets.isEmpty()) {
+            return null;
+        }
+
+        // the first change set warms up the liquibase metadata caches
+        if (!isValid(changeSets.get(0), checkSums.get(0))) {
+            return changeSets.get(0);
+        }
+
+        if (threads <= 1 || changeSets.size() <= 2) {
+            for (int i = 1; i < changeSets.size(); i++) {
+                if (!isValid(changeSets.get(i), checkSums.get(i))) {
+                    return changeSets.get(i);
+                }
+            }
+            return null;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "liquibase-wildfly-checksum-" + COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<Boolean>> results = new ArrayList<>(changeSets.size());
+            for (int i = 1; i < changeSets.size(); i++) {
+                ChangeSet changeSet = changeSets.get(i);
+                RanChangeSet item = checkSums.get(i);
+                results.add(executor.submit(() -> isValid(changeSet, item)));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                if (!results.get(i).get()) {
+                    return changeSets.get(i + 1);
+                }
+            }
+            return null;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException(ex);
+        } catch (ExecutionException ex) {
+            throw new DatabaseException(ex.getCause());
+        } finally {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static boolean isValid(ChangeSet changeSet, RanChangeSet ranChangeSet) {
+        if (changeSet.isCheckSumValid(ranChangeSet.getLastCheckSum())) {
+            return true;
+        }
+        if (changeSet.shouldRunOnChange()) {
+            return true;
+        }
+        LogFactory.getLogger().warning("Invalid checksum of the change set " + changeSet.toString(false) + " was " + ranChangeSet.getLastCheckSum() + " but is now " + changeSet.generateCheckSum());
+        return false;
+    }
+
+    private static String key(String changeLog, String id, String author) {
+        return FileChangeLogHistoryService.normalizePath(changeLog) + "::" + lower(id) + "::" + lower(author);
+    }
+
+    private static String lower(String value) {
+        return value == null ? null : value.toLowerCase(Locale.ROOT);
+    }
+}
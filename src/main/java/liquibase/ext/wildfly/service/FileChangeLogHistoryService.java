@@ -17,24 +17,100 @@ package liquibase.ext.wildfly.service;
 
 import liquibase.ext.wildfly.config.Config;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import liquibase.ContextExpression;
+import liquibase.Contexts;
+import liquibase.LabelExpression;
+import liquibase.Labels;
+import liquibase.change.CheckSum;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
 import liquibase.changelog.OfflineChangeLogHistoryService;
+import liquibase.changelog.RanChangeSet;
+import liquibase.configuration.GlobalConfiguration;
+import liquibase.configuration.LiquibaseConfiguration;
 import liquibase.database.Database;
+import liquibase.exception.DatabaseException;
+import liquibase.exception.LiquibaseException;
 import liquibase.ext.wildfly.database.WildflyDatabase;
+import liquibase.logging.LogFactory;
 import liquibase.servicelocator.LiquibaseService;
+import liquibase.util.ISODateFormat;
+import liquibase.util.csv.CSVReader;
 
 /**
+ * The file change log history service.
+ * <p>
+ * The history file can be shared by many change logs. As soon as the change
+ * log is known the history is loaded only for the change log files in use. The
+ * loaded history is cached until the history file changes. The checksums of
+ * the ran change sets are computed in parallel before the change log
+ * validation. The appended change sets update the cached history and the
+ * cached maximum ids of the {@code maxCheck} precondition without reloading
+ * the file.
  *
  * @author Andrej Petras
  */
 @LiquibaseService(skip = false)
 public class FileChangeLogHistoryService extends OfflineChangeLogHistoryService {
 
+    /**
+     * The history file.
+     */
+    private final File file;
+
+    /**
+     * The change log file paths in use or {@code null} to load the whole history.
+     */
+    private Set<String> changeLogPaths;
+
+    /**
+     * The cached history.
+     */
+    private List<RanChangeSet> ranChangeSets;
+
+    /**
+     * The last modification time of the cached history file.
+     */
+    private long lastModified;
+
+    /**
+     * The length of the cached history file.
+     */
+    private long length;
+
+    /**
+     * The cached maximum ids of the whole history by field and value.
+     */
+    private final Map<String, Map<String, String>> maxIds = new HashMap<>();
+
+    /**
+     * The last modification time of the history file of the maximum ids.
+     */
+    private long maxModified;
+
+    /**
+     * The length of the history file of the maximum ids.
+     */
+    private long maxLength;
+
     public FileChangeLogHistoryService(Database database, File file) {
         super(database, file, false, false);
+        this.file = file;
     }
-    
+
     public FileChangeLogHistoryService() {
-        super(null, Config.getChangeLogHistoryFile(), false, false);
+        this(null, Config.getChangeLogHistoryFile());
     }
 
     @Override
@@ -47,4 +123,329 @@ public class FileChangeLogHistoryService extends OfflineChangeLogHistoryService
         return database instanceof WildflyDatabase;
     }
 
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void upgradeChecksums(DatabaseChangeLog databaseChangeLog, Contexts contexts, LabelExpression labels) throws DatabaseException {
+        if (!Config.isChangeLogHistoryFullLoad() && databaseChangeLog != null) {
+            Set<String> paths = new HashSet<>();
+            for (ChangeSet changeSet : databaseChangeLog.getChangeSets()) {
+                paths.add(changeSet.getFilePath());
+            }
+            setChangeLogPaths(paths);
+        }
+        super.upgradeChecksums(databaseChangeLog, contexts, labels);
+        if (databaseChangeLog != null) {
+            new CheckSumValidator(Config.getCheckSumThreads()).validate(databaseChangeLog, getRanChangeSets());
+        }
+    }
+
+    /**
+     * Sets the change log file paths to load from the history.
+     *
+     * @param changeLogPaths the change log file paths or {@code null} to load
+     * the whole history.
+     */
+    public void setChangeLogPaths(Set<String> changeLogPaths) {
+        if (changeLogPaths == null) {
+            this.changeLogPaths = null;
+        } else {
+            this.changeLogPaths = new HashSet<>();
+            for (String path : changeLogPaths) {
+                this.changeLogPaths.add(normalizePath(path));
+            }
+        }
+        clearCache();
+    }
+
+    /**
+     * Loads the whole history regardless of the change log in use.
+     *
+     * @return the list of all ran change sets.
+     * @throws DatabaseException if the method fails.
+     */
+    public List<RanChangeSet> getAllRanChangeSets() throws DatabaseException {
+        if (changeLogPaths == null) {
+            return getRanChangeSets();
+        }
+        return load(null);
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public List<RanChangeSet> getRanChangeSets() throws DatabaseException {
+        if (!file.exists()) {
+            clearCache();
+            return super.getRanChangeSets();
+        }
+        if (ranChangeSets == null || lastModified != file.lastModified() || length != file.length()) {
+            long modified = file.lastModified();
+            long size = file.length();
+            ranChangeSets = load(changeLogPaths);
+            lastModified = modified;
+            length = size;
+        }
+        return new ArrayList<>(ranChangeSets);
+    }
+
+    /**
+     * Gets the maximum id of the whole history for the field value. The result
+     * is cached until the history file changes outside of this service.
+     *
+     * @param field the ran change set field.
+     * @param value the field value.
+     * @return the maximum id or {@code null}.
+     * @throws DatabaseException if the method fails.
+     */
+    public String getMaxId(String field, String value) throws DatabaseException {
+        if (maxModified != file.lastModified() || maxLength != file.length()) {
+            maxIds.clear();
+            maxModified = file.lastModified();
+            maxLength = file.length();
+        }
+        Map<String, String> values = maxIds.computeIfAbsent(field, k -> new HashMap<>());
+        if (values.containsKey(value)) {
+            return values.get(value);
+        }
+        List<RanChangeSet> changes = file.exists() ? getAllRanChangeSets() : super.getRanChangeSets();
+        String result = RanChangeSetFields.maxId(changes, field, value);
+        values.put(value, result);
+        return result;
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void tag(String tagString) throws DatabaseException {
+        Set<String> tmp = changeLogPaths;
+        setChangeLogPaths(null);
+        try {
+            super.tag(tagString);
+        } finally {
+            setChangeLogPaths(tmp);
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public boolean tagExists(String tag) throws DatabaseException {
+        for (RanChangeSet item : getAllRanChangeSets()) {
+            if (tag.equals(item.getTag())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void setExecType(ChangeSet changeSet, ChangeSet.ExecType execType) throws DatabaseException {
+        try {
+            super.setExecType(changeSet, execType);
+        } finally {
+            // the appended change set already updated the cache
+            if (execType.ranBefore) {
+                clearCache();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void removeFromHistory(ChangeSet changeSet) throws DatabaseException {
+        try {
+            super.removeFromHistory(changeSet);
+        } finally {
+            clearCache();
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    protected void replaceChecksum(ChangeSet changeSet) throws DatabaseException {
+        try {
+            super.replaceChecksum(changeSet);
+        } finally {
+            clearCache();
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    protected void appendChangeSet(ChangeSet changeSet, ChangeSet.ExecType execType) throws DatabaseException {
+        boolean rows = ranChangeSets != null && lastModified == file.lastModified() && length == file.length();
+        boolean max = maxModified == file.lastModified() && maxLength == file.length();
+        try {
+            super.appendChangeSet(changeSet, execType);
+        } catch (DatabaseException e) {
+            clearCache();
+            throw e;
+        }
+        RanChangeSet ran = new RanChangeSet(changeSet, execType, changeSet.getContexts(), changeSet.getLabels());
+        if (rows) {
+            if (changeLogPaths == null || changeLogPaths.contains(normalizePath(ran.getChangeLog()))) {
+                ranChangeSets.add(ran);
+            }
+            lastModified = file.lastModified();
+            length = file.length();
+        } else {
+            ranChangeSets = null;
+        }
+        if (max) {
+            for (Map.Entry<String, Map<String, String>> entry : maxIds.entrySet()) {
+                Function<RanChangeSet, Object> accessor = RanChangeSetFields.accessor(entry.getKey());
+                Object value = accessor.apply(ran);
+                if (value instanceof String && entry.getValue().containsKey(value)) {
+                    entry.getValue().put((String) value, RanChangeSetFields.max(entry.getValue().get(value), ran.getId()));
+                }
+            }
+            maxModified = file.lastModified();
+            maxLength = file.length();
+        } else {
+            maxIds.clear();
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void clearAllCheckSums() throws LiquibaseException {
+        try {
+            super.clearAllCheckSums();
+        } finally {
+            clearCache();
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void reset() {
+        super.reset();
+        changeLogPaths = null;
+        clearCache();
+    }
+
+    private void clearCache() {
+        ranChangeSets = null;
+        maxIds.clear();
+    }
+
+    /**
+     * Loads the history rows for the change log file paths.
+     *
+     * @param paths the normalized change log file paths or {@code null} for
+     * all rows.
+     * @return the list of ran change sets.
+     * @throws DatabaseException if the method fails.
+     */
+    private List<RanChangeSet> load(Set<String> paths) throws DatabaseException {
+        String encoding = LiquibaseConfiguration.getInstance().getConfiguration(GlobalConfiguration.class).getOutputEncoding();
+        List<RanChangeSet> result = new ArrayList<>();
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), encoding)) {
+            CSVReader csv = new CSVReader(reader);
+            String[] line = csv.readNext();
+            if (line == null) {
+                return result;
+            }
+            Map<String, Integer> columns = new HashMap<>();
+            for (int i = 0; i < line.length; i++) {
+                columns.put(line[i], i);
+            }
+            if (!Integer.valueOf(0).equals(columns.get("ID"))) {
+                throw new DatabaseException("Missing header in file " + file.getAbsolutePath());
+            }
+            int filename = column(columns, "FILENAME");
+            int id = column(columns, "ID");
+            int author = column(columns, "AUTHOR");
+            int md5sum = column(columns, "MD5SUM");
+            int dateExecuted = column(columns, "DATEEXECUTED");
+            int tag = column(columns, "TAG");
+            int execType = column(columns, "EXECTYPE");
+            int description = column(columns, "DESCRIPTION");
+            int comments = column(columns, "COMMENTS");
+            int contexts = column(columns, "CONTEXTS");
+            int labels = column(columns, "LABELS");
+            int deploymentId = column(columns, "DEPLOYMENT_ID");
+
+            ISODateFormat dateFormat = new ISODateFormat();
+            int skipped = 0;
+            while ((line = csv.readNext()) != null) {
+                String changeLog = value(line, filename);
+                if (paths != null && !paths.contains(normalizePath(changeLog))) {
+                    skipped++;
+                    continue;
+                }
+                String tmp = value(line, contexts);
+                ContextExpression contextExpression = tmp == null ? new ContextExpression() : new ContextExpression(tmp);
+                tmp = value(line, labels);
+                Labels labelsValue = tmp == null ? new Labels() : new Labels(tmp);
+
+                result.add(new RanChangeSet(
+                        changeLog,
+                        value(line, id),
+                        value(line, author),
+                        CheckSum.parse(value(line, md5sum)),
+                        dateFormat.parse(value(line, dateExecuted)),
+                        value(line, tag),
+                        ChangeSet.ExecType.valueOf(value(line, execType)),
+                        value(line, description),
+                        value(line, comments),
+                        contextExpression,
+                        labelsValue,
+                        value(line, deploymentId)));
+            }
+            LogFactory.getLogger().debug("Loaded " + result.size() + " change sets from history file " + file.getName() + ", skipped " + skipped);
+        } catch (DatabaseException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new DatabaseException(e);
+        }
+        return result;
+    }
+
+    /**
+     * Normalizes the change log file path the same way as
+     * {@link RanChangeSet#isSameAs(ChangeSet)} compares it.
+     *
+     * @param path the change log file path.
+     * @return the normalized path.
+     */
+    public static String normalizePath(String path) {
+        if (path == null) {
+            return null;
+        }
+        return path.replace('\\', '/').replaceFirst("^classpath:", "").toLowerCase(Locale.ROOT);
+    }
+
+    private static int column(Map<String, Integer> columns, String name) {
+        Integer index = columns.get(name);
+        if (index == null) {
+            return -1;
+        }
+        return index;
+    }
+
+    private static String value(String[] line, int index) {
+        if (index < 0 || index >= line.length) {
+            return null;
+        }
+        return line[index];
+    }
 }
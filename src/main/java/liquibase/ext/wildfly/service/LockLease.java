@@ -0,0 +1,275 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.service;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import liquibase.ext.wildfly.config.Config;
+
+/**
+ * The change log lock lease.
+ * <p>
+ * The lease value has the format
+ * {@code date#user#owner#host#pid#lease#expires#fence}. The old lock value
+ * {@code date#user} is a lease without expiration. The owner is the id of the
+ * lock service instance, so two services in one JVM never share a lease.
+ * <p>
+ * The expiration time is written by the clock of the lease owner and compared
+ * with the local clock of the contender. The lease is expired only after the
+ * clock skew margin {@code liquibase.wildfly.lock.clock-skew} in seconds
+ * (default 5), the clocks of the hosts must be synchronized within this margin.
+ *
+ * @author Andrej Petras
+ */
+public class LockLease {
+
+    /**
+     * The lock value separator.
+     */
+    private static final String SEPARATOR = "#";
+
+    /**
+     * The date format for the date key in the lock value.
+     */
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy.MM.dd_HH:mm:ss");
+
+    /**
+     * The lock date.
+     */
+    private final Date date;
+
+    /**
+     * The user.
+     */
+    private final String user;
+
+    /**
+     * The owner id.
+     */
+    private final String owner;
+
+    /**
+     * The host.
+     */
+    private final String host;
+
+    /**
+     * The process id.
+     */
+    private final String pid;
+
+    /**
+     * The lease duration in milliseconds.
+     */
+    private final long lease;
+
+    /**
+     * The lease expiration time in milliseconds.
+     */
+    private final long expires;
+
+    /**
+     * The fencing counter.
+     */
+    private final long fence;
+
+    private LockLease(Date date, String user, String owner, String host, String pid, long lease, long expires, long fence) {
+        this.date = date;
+        this.user = user;
+        this.owner = owner;
+        this.host = host;
+        this.pid = pid;
+        this.lease = lease;
+        this.expires = expires;
+        this.fence = fence;
+    }
+
+    /**
+     * Creates the new lease of the lock service instance.
+     *
+     * @param lease the lease duration in milliseconds.
+     * @param fence the fencing counter.
+     * @param owner the owner id of the lock service instance.
+     * @return the new lease.
+     */
+    public static LockLease create(long lease, long fence, String owner) {
+        long now = System.currentTimeMillis();
+        String[] process = ManagementFactory.getRuntimeMXBean().getName().split("@", 2);
+        String host = process.length > 1 ? process[1] : null;
+        if (host == null) {
+            try {
+                host = InetAddress.getLocalHost().getHostName();
+            } catch (Exception ex) {
+                host = "unknown";
+            }
+        }
+        return new LockLease(new Date(now), System.getProperty("user.name"), owner, host, process[0], lease, now + lease, fence);
+    }
+
+    /**
+     * Parses the lock value.
+     *
+     * @param value the lock value.
+     * @return the lease.
+     */
+    public static LockLease parse(String value) {
+        String[] tmp = value.split(SEPARATOR);
+        Date date = null;
+        try {
+            date = Date.from(LocalDateTime.parse(tmp[0], DATE_FORMAT).atZone(ZoneId.systemDefault()).toInstant());
+        } catch (DateTimeParseException ex) {
+            // ok
+        }
+        String user = tmp.length > 1 ? tmp[1] : null;
+        if (tmp.length < 8) {
+            return new LockLease(date, user, null, null, null, 0, 0, 0);
+        }
+        return new LockLease(date, user, tmp[2], tmp[3], tmp[4], parseLong(tmp[5]), parseLong(tmp[6]), parseLong(tmp[7]));
+    }
+
+    /**
+     * Returns {@code true} if the system property value is a lease and not a
+     * lease marker.
+     *
+     * @param value the system property value.
+     * @return {@code true} if the value is a lease.
+     */
+    public static boolean isLease(String value) {
+        return value != null && value.contains(SEPARATOR);
+    }
+
+    /**
+     * Renews the lease.
+     *
+     * @return the renewed lease.
+     */
+    public LockLease renew() {
+        return new LockLease(date, user, owner, host, pid, lease, System.currentTimeMillis() + lease, fence);
+    }
+
+    /**
+     * Creates the lease of the lock service instance which takes over this
+     * lease.
+     *
+     * @param lease the lease duration in milliseconds.
+     * @param owner the owner id of the lock service instance.
+     * @return the new lease.
+     */
+    public LockLease takeOver(long lease, String owner) {
+        return create(lease, fence + 1, owner);
+    }
+
+    /**
+     * Returns {@code true} if the lease of the other owner is expired
+     * including the clock skew margin.
+     *
+     * @return {@code true} if the lease is expired.
+     */
+    public boolean isExpired() {
+        return owner != null && expires + Config.getLockClockSkew() < System.currentTimeMillis();
+    }
+
+    /**
+     * Returns {@code true} if the lease belongs to the owner.
+     *
+     * @param owner the owner id of the lock service instance.
+     * @return {@code true} if the lease belongs to the owner.
+     */
+    public boolean isOwner(String owner) {
+        return owner != null && owner.equals(this.owner);
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public String getPid() {
+        return pid;
+    }
+
+    public long getLease() {
+        return lease;
+    }
+
+    public long getExpires() {
+        return expires;
+    }
+
+    public long getFence() {
+        return fence;
+    }
+
+    /**
+     * Gets the lock owner description.
+     *
+     * @return the lock owner description.
+     */
+    public String getLockedBy() {
+        if (owner == null) {
+            return user;
+        }
+        return user + "@" + host + " (pid " + pid + ", fence " + fence + ", expires " + Instant.ofEpochMilli(expires) + ")";
+    }
+
+    /**
+     * Creates the lock value.
+     *
+     * @return the lock value.
+     */
+    public String toValue() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(DATE_FORMAT.format(LocalDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault())));
+        sb.append(SEPARATOR).append(user);
+        sb.append(SEPARATOR).append(owner);
+        sb.append(SEPARATOR).append(host);
+        sb.append(SEPARATOR).append(pid);
+        sb.append(SEPARATOR).append(lease);
+        sb.append(SEPARATOR).append(expires);
+        sb.append(SEPARATOR).append(fence);
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return toValue();
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+}
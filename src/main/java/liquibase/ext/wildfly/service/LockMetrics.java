@@ -0,0 +1,240 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The change log lock metrics.
+ *
+ * @author Andrej Petras
+ */
+public class LockMetrics implements LockMetricsMBean {
+
+    /**
+     * The number of lock acquisition attempts.
+     */
+    private final AtomicLong attempts = new AtomicLong();
+
+    /**
+     * The number of lock waits.
+     */
+    private final AtomicLong waits = new AtomicLong();
+
+    /**
+     * The number of lock waits which timed out.
+     */
+    private final AtomicLong timeouts = new AtomicLong();
+
+    /**
+     * The total wait time in milliseconds.
+     */
+    private final AtomicLong totalWaitTime = new AtomicLong();
+
+    /**
+     * The maximum wait time in milliseconds.
+     */
+    private final AtomicLong maxWaitTime = new AtomicLong();
+
+    /**
+     * The last wait time in milliseconds.
+     */
+    private final AtomicLong lastWaitTime = new AtomicLong();
+
+    /**
+     * The number of acquired locks.
+     */
+    private final AtomicLong acquisitions = new AtomicLong();
+
+    /**
+     * The number of expired leases taken over.
+     */
+    private final AtomicLong takeovers = new AtomicLong();
+
+    /**
+     * The number of lost leases.
+     */
+    private final AtomicLong lostLeases = new AtomicLong();
+
+    /**
+     * The number of released locks.
+     */
+    private final AtomicLong releases = new AtomicLong();
+
+    /**
+     * The total hold time in milliseconds.
+     */
+    private final AtomicLong totalHoldTime = new AtomicLong();
+
+    /**
+     * The maximum hold time in milliseconds.
+     */
+    private final AtomicLong maxHoldTime = new AtomicLong();
+
+    /**
+     * The last hold time in milliseconds.
+     */
+    private final AtomicLong lastHoldTime = new AtomicLong();
+
+    /**
+     * The acquisition time of the held lock or zero.
+     */
+    private final AtomicLong acquiredAt = new AtomicLong();
+
+    /**
+     * Records the lock acquisition attempt.
+     */
+    public void attempt() {
+        attempts.incrementAndGet();
+    }
+
+    /**
+     * Records the lock wait.
+     *
+     * @param time the wait time in milliseconds.
+     * @param acquired the lock acquired flag.
+     */
+    public void waited(long time, boolean acquired) {
+        waits.incrementAndGet();
+        if (!acquired) {
+            timeouts.incrementAndGet();
+        }
+        totalWaitTime.addAndGet(time);
+        maxWaitTime.accumulateAndGet(time, Math::max);
+        lastWaitTime.set(time);
+    }
+
+    /**
+     * Records the acquired lock.
+     *
+     * @param takeover the expired lease take over flag.
+     */
+    public void acquired(boolean takeover) {
+        acquisitions.incrementAndGet();
+        if (takeover) {
+            takeovers.incrementAndGet();
+        }
+        acquiredAt.set(System.currentTimeMillis());
+    }
+
+    /**
+     * Records the lost lease.
+     */
+    public void lost() {
+        lostLeases.incrementAndGet();
+    }
+
+    /**
+     * Records the released lock.
+     *
+     * @return the hold time in milliseconds.
+     */
+    public long released() {
+        long start = acquiredAt.getAndSet(0);
+        if (start == 0) {
+            return 0;
+        }
+        long time = System.currentTimeMillis() - start;
+        releases.incrementAndGet();
+        totalHoldTime.addAndGet(time);
+        maxHoldTime.accumulateAndGet(time, Math::max);
+        lastHoldTime.set(time);
+        return time;
+    }
+
+    @Override
+    public long getAttempts() {
+        return attempts.get();
+    }
+
+    @Override
+    public long getWaits() {
+        return waits.get();
+    }
+
+    @Override
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    @Override
+    public long getTotalWaitTime() {
+        return totalWaitTime.get();
+    }
+
+    @Override
+    public long getMaxWaitTime() {
+        return maxWaitTime.get();
+    }
+
+    @Override
+    public long getLastWaitTime() {
+        return lastWaitTime.get();
+    }
+
+    @Override
+    public long getAcquisitions() {
+        return acquisitions.get();
+    }
+
+    @Override
+    public long getTakeovers() {
+        return takeovers.get();
+    }
+
+    @Override
+    public long getLostLeases() {
+        return lostLeases.get();
+    }
+
+    @Override
+    public long getReleases() {
+        return releases.get();
+    }
+
+    @Override
+    public long getTotalHoldTime() {
+        return totalHoldTime.get();
+    }
+
+    @Override
+    public long getMaxHoldTime() {
+        return maxHoldTime.get();
+    }
+
+    @Override
+    public long getLastHoldTime() {
+        return lastHoldTime.get();
+    }
+
+    @Override
+    public long getCurrentHoldTime() {
+        long start = acquiredAt.get();
+        if (start == 0) {
+            return 0;
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    @Override
+    public String toString() {
+        return "LockMetrics[attempts=" + getAttempts() + ", waits=" + getWaits() + ", timeouts=" + getTimeouts()
+                + ", totalWaitTime=" + getTotalWaitTime() + ", maxWaitTime=" + getMaxWaitTime() + ", lastWaitTime=" + getLastWaitTime()
+                + ", acquisitions=" + getAcquisitions() + ", takeovers=" + getTakeovers() + ", lostLeases=" + getLostLeases()
+                + ", releases=" + getReleases() + ", totalHoldTime=" + getTotalHoldTime() + ", maxHoldTime=" + getMaxHoldTime()
+                + ", lastHoldTime=" + getLastHoldTime() + "]";
+    }
+}
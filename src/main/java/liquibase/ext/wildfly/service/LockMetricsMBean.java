@@ -0,0 +1,53 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.service;
+
+/**
+ * The change log lock metrics management interface. All times are in
+ * milliseconds.
+ *
+ * @author Andrej Petras
+ */
+public interface LockMetricsMBean {
+
+    long getAttempts();
+
+    long getWaits();
+
+    long getTimeouts();
+
+    long getTotalWaitTime();
+
+    long getMaxWaitTime();
+
+    long getLastWaitTime();
+
+    long getAcquisitions();
+
+    long getTakeovers();
+
+    long getLostLeases();
+
+    long getReleases();
+
+    long getTotalHoldTime();
+
+    long getMaxHoldTime();
+
+    long getLastHoldTime();
+
+    long getCurrentHoldTime();
+}
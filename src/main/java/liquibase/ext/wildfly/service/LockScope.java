@@ -0,0 +1,242 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import liquibase.ext.wildfly.config.Config;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * The change log lock scope.
+ * <p>
+ * The scope {@code profile=full}, {@code subsystem=logging} or any custom key
+ * is locked by the system property {@code <lock>.profile_3Dfull},
+ * {@code <lock>.subsystem_3Dlogging} or {@code <lock>.<key>}. Letters, digits
+ * and {@code -} are kept, every other byte of the scope is escaped as
+ * {@code _XX}, so different scopes never share a lock name. Without scopes the
+ * whole server is locked by the system property {@code <lock>}, which
+ * excludes all scoped locks.
+ *
+ * @author Andrej Petras
+ */
+public class LockScope implements Comparable<LockScope> {
+
+    /**
+     * The escape character of the lock name.
+     */
+    private static final char ESCAPE = '_';
+
+    /**
+     * The hex digits of the escaped bytes.
+     */
+    private static final String HEX = "0123456789ABCDEF";
+
+    /**
+     * The scope.
+     */
+    private final String scope;
+
+    /**
+     * The lock system property name.
+     */
+    private final String name;
+
+    /**
+     * The lock address.
+     */
+    private ModelNode address;
+
+    /**
+     * The held lease.
+     */
+    private volatile LockLease lease;
+
+    /**
+     * The lease of the lock holder from the last acquisition attempt.
+     */
+    private volatile LockLease holder;
+
+    public LockScope(String scope) {
+        this.scope = scope;
+        if (scope == null || scope.isEmpty()) {
+            name = Config.getLockProperty();
+        } else {
+            name = Config.getLockProperty() + "." + escape(scope);
+        }
+    }
+
+    /**
+     * Parses the scoped lock system property name.
+     *
+     * @param name the system property name.
+     * @return the lock scope or {@code null} if the name is not a scoped lock.
+     */
+    public static LockScope parse(String name) {
+        String prefix = Config.getLockProperty() + ".";
+        if (name == null || !name.startsWith(prefix) || name.length() == prefix.length()) {
+            return null;
+        }
+        String scope = unescape(name.substring(prefix.length()));
+        if (scope == null) {
+            return null;
+        }
+        LockScope result = new LockScope(scope);
+        return result.getName().equals(name) ? result : null;
+    }
+
+    /**
+     * Creates the sorted lock scopes. The scopes are always acquired in this
+     * order.
+     *
+     * @param scopes the scopes.
+     * @return the sorted lock scopes.
+     */
+    public static List<LockScope> create(Collection<String> scopes) {
+        TreeSet<LockScope> result = new TreeSet<>();
+        if (scopes != null) {
+            for (String item : scopes) {
+                String tmp = item.trim();
+                if (!tmp.isEmpty()) {
+                    result.add(new LockScope(tmp));
+                }
+            }
+        }
+        if (result.isEmpty()) {
+            result.add(new LockScope(null));
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * Returns {@code true} if this is the lock of the whole server.
+     *
+     * @return {@code true} if this is the lock of the whole server.
+     */
+    public boolean isGlobal() {
+        return scope == null || scope.isEmpty();
+    }
+
+    public String getScope() {
+        return scope;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the marker system property name of the lease. The name contains
+     * the owner and the fencing counter, so the marker exists only while the
+     * lease of this owner and fence is held.
+     *
+     * @param lease the lease.
+     * @return the marker system property name.
+     */
+    public String getMarkerName(LockLease lease) {
+        return name + "." + lease.getOwner() + "." + lease.getFence();
+    }
+
+    public ModelNode getAddress() {
+        return address;
+    }
+
+    public void setAddress(ModelNode address) {
+        this.address = address;
+    }
+
+    public LockLease getLease() {
+        return lease;
+    }
+
+    public void setLease(LockLease lease) {
+        this.lease = lease;
+    }
+
+    public LockLease getHolder() {
+        return holder;
+    }
+
+    public void setHolder(LockLease holder) {
+        this.holder = holder;
+    }
+
+    @Override
+    public int compareTo(LockScope o) {
+        return name.compareTo(o.name);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof LockScope && name.equals(((LockScope) obj).name);
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return scope == null ? name : scope;
+    }
+
+    private static String escape(String value) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            if (isPlain(b)) {
+                sb.append((char) b);
+            } else {
+                sb.append(ESCAPE).append(HEX.charAt((b >> 4) & 0xF)).append(HEX.charAt(b & 0xF));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String unescape(String value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int i = 0;
+        while (i < value.length()) {
+            char c = value.charAt(i);
+            if (c == ESCAPE) {
+                if (i + 2 >= value.length()) {
+                    return null;
+                }
+                int hi = HEX.indexOf(value.charAt(i + 1));
+                int lo = HEX.indexOf(value.charAt(i + 2));
+                if (hi < 0 || lo < 0) {
+                    return null;
+                }
+                out.write((hi << 4) | lo);
+                i += 3;
+            } else if (c < 128 && isPlain((byte) c)) {
+                out.write(c);
+                i++;
+            } else {
+                return null;
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static boolean isPlain(byte b) {
+        return (b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z') || (b >= '0' && b <= '9') || b == '-';
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+import liquibase.changelog.RanChangeSet;
+import liquibase.serializer.ReflectionSerializer;
+
+/**
+ * The accessors of the ran change set fields.
+ * <p>
+ * The known fields are read by the getters. Other field names fall back to the
+ * {@link ReflectionSerializer}.
+ *
+ * @author Andrej Petras
+ */
+public final class RanChangeSetFields {
+
+    /**
+     * The accessors by field name.
+     */
+    private static final Map<String, Function<RanChangeSet, Object>> ACCESSORS;
+
+    static {
+        Map<String, Function<RanChangeSet, Object>> tmp = new HashMap<>();
+        tmp.put("changeLog", RanChangeSet::getChangeLog);
+        tmp.put("id", RanChangeSet::getId);
+        tmp.put("author", RanChangeSet::getAuthor);
+        tmp.put("lastCheckSum", RanChangeSet::getLastCheckSum);
+        tmp.put("dateExecuted", RanChangeSet::getDateExecuted);
+        tmp.put("tag", RanChangeSet::getTag);
+        tmp.put("execType", RanChangeSet::getExecType);
+        tmp.put("description", RanChangeSet::getDescription);
+        tmp.put("comments", RanChangeSet::getComments);
+        tmp.put("contextExpression", RanChangeSet::getContextExpression);
+        tmp.put("labels", RanChangeSet::getLabels);
+        tmp.put("orderExecuted", RanChangeSet::getOrderExecuted);
+        tmp.put("deploymentId", RanChangeSet::getDeploymentId);
+        ACCESSORS = Collections.unmodifiableMap(tmp);
+    }
+
+    private RanChangeSetFields() {
+    }
+
+    /**
+     * Gets the accessor of the field.
+     *
+     * @param field the field name.
+     * @return the accessor of the field.
+     */
+    public static Function<RanChangeSet, Object> accessor(String field) {
+        Function<RanChangeSet, Object> result = ACCESSORS.get(field);
+        if (result == null) {
+            result = item -> ReflectionSerializer.getInstance().getValue(item, field);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the maximum id of the ran change sets with the field value.
+     *
+     * @param changes the ran change sets.
+     * @param field the field name.
+     * @param value the field value.
+     * @return the maximum id or {@code null}.
+     */
+    public static String maxId(Collection<RanChangeSet> changes, String field, String value) {
+        Function<RanChangeSet, Object> accessor = accessor(field);
+        String result = null;
+        if (changes != null) {
+            for (RanChangeSet change : changes) {
+                result = max(result, matches(accessor, change, value) ? change.getId() : null);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns {@code true} if the field of the ran change set has the value.
+     *
+     * @param accessor the field accessor.
+     * @param change the ran change set.
+     * @param value the field value.
+     * @return {@code true} if the field of the ran change set has the value.
+     */
+    public static boolean matches(Function<RanChangeSet, Object> accessor, RanChangeSet change, String value) {
+        Object tmp = accessor.apply(change);
+        return tmp != null && tmp.equals(value);
+    }
+
+    /**
+     * Gets the greater of the two ids. The {@code null} id is skipped.
+     *
+     * @param id1 the first id.
+     * @param id2 the second id.
+     * @return the greater id.
+     */
+    public static String max(String id1, String id2) {
+        if (id1 == null) {
+            return id2;
+        }
+        if (id2 == null) {
+            return id1;
+        }
+        return id1.compareTo(id2) >= 0 ? id1 : id2;
+    }
+}
@@ -15,9 +15,19 @@
  */
 package liquibase.ext.wildfly.service;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import liquibase.configuration.GlobalConfiguration;
+import liquibase.configuration.LiquibaseConfiguration;
 import liquibase.database.Database;
 import liquibase.exception.DatabaseException;
 import liquibase.exception.LockException;
@@ -26,31 +36,138 @@ import liquibase.ext.wildfly.database.WildflyDatabase;
 import liquibase.ext.wildfly.database.WildflyDatabaseConnection;
 import liquibase.lockservice.DatabaseChangeLogLock;
 import liquibase.lockservice.LockService;
+import liquibase.logging.LogFactory;
 import org.jboss.as.controller.client.helpers.ClientConstants;
 import org.jboss.as.controller.client.helpers.Operations;
 import org.jboss.dmr.ModelNode;
 
 /**
  * The wildfly lock service.
+ * <p>
+ * Each lock scope is the system property {@link LockScope#getName()} with the
+ * {@link LockLease} value. The owner of the lease creates the marker system
+ * property {@code <lock>.<owner>.<fence>} in the same composite operation. The
+ * owner is the id of the service instance. A background heartbeat renews the
+ * leases while the locks are held; the renewal reads the marker of its owner
+ * and fence in the same composite operation, so it fails after a takeover. An
+ * expired lease is taken over by a composite operation which removes the
+ * marker of the old owner, so only one contender wins the takeover.
+ * <p>
+ * The lock scopes are set by the connection property
+ * {@code liquibase.wildfly.lock.scopes}, for example
+ * {@code profile=full,subsystem=logging,my-key}. Change logs with disjoint
+ * scopes run in parallel. All scopes are acquired in the sorted order by one
+ * composite operation which also reads the current lock holders, so a
+ * contender never holds a part of the scopes while waiting for the rest. The
+ * held leases are cached locally and {@link #hasChangeLogLock()} does not call
+ * the server.
+ * <p>
+ * The whole server lock {@code <lock>} excludes all scoped locks. A scoped
+ * acquisition adds and removes {@code <lock>} in its composite operation, so it
+ * fails while the whole server is locked. The whole server acquisition reads
+ * the locks in the last step of its composite operation, after its write has
+ * serialized it with the other writers, and releases {@code <lock>} again if any
+ * scoped lock exists.
+ * <p>
+ * The {@link LockMetrics} are registered as the MBean
+ * {@code liquibase.ext.wildfly:type=LockService,name=<scopes>} while the scopes
+ * are in use and each release logs one {@code lock-release} line with the wait
+ * and hold time.
  * 
  * @author Andrej Petras
  */
 public class WildflyLockService implements LockService {
 
     /**
-     * The lock value separator.
+     * The first retry delay in milliseconds.
      */
-    private static final String SEPARATOR = "#";
-    
+    private static final long INITIAL_DELAY = 500;
+
+    /**
+     * The read children resources operation.
+     */
+    private static final String READ_CHILDREN_RESOURCES_OPERATION = "read-children-resources";
+
+    /**
+     * The system property child type.
+     */
+    private static final String SYSTEM_PROPERTY = "system-property";
+
     /**
-     * The date format for the date key in the lock value.
+     * The failure codes of the missing resource.
      */
-    private static final SimpleDateFormat SDF = new SimpleDateFormat("yyyy.MM.dd_HH:mm:ss");
+    private static final String[] NOT_FOUND = {"WFLYCTL0216", "JBAS014807"};
+
+    /**
+     * The metrics MBean domain.
+     */
+    private static final String MBEAN_DOMAIN = "liquibase.ext.wildfly";
 
     /**
      * The wildfly server.
      */
     private WildflyDatabase database;
+
+    /**
+     * The lock wait time in minutes.
+     */
+    private Long changeLogLockWaitTime;
+
+    /**
+     * The maximum lock recheck time in seconds.
+     */
+    private Long changeLogLockRecheckTime;
+
+    /**
+     * The owner id of this lock service instance.
+     */
+    private final String owner = UUID.randomUUID().toString();
+
+    /**
+     * The lock metrics.
+     */
+    private final LockMetrics metrics = new LockMetrics();
+
+    /**
+     * The sorted lock scopes.
+     */
+    private List<LockScope> scopes;
+
+    /**
+     * The foreign locks which exclude the scopes: the whole server lock for the
+     * scoped locks or the scoped locks for the whole server lock.
+     */
+    private List<LockScope> blockers = new ArrayList<>();
+
+    /**
+     * The held locks flag.
+     */
+    private volatile boolean locked;
+
+    /**
+     * The lost lease flag.
+     */
+    private volatile boolean lost;
+
+    /**
+     * The address of the parent resource of the locks.
+     */
+    private ModelNode parentAddress;
+
+    /**
+     * The lease heartbeat.
+     */
+    private ScheduledExecutorService heartbeat;
+
+    /**
+     * The scheduled loss of the leases at their local expiration.
+     */
+    private ScheduledFuture<?> expiry;
+
+    /**
+     * The registered metrics MBean name.
+     */
+    private ObjectName mbeanName;
     
     /**
      * {@inheritDoc }
@@ -81,6 +198,19 @@ public class WildflyLockService implements LockService {
      */
     @Override
     public void setChangeLogLockWaitTime(long changeLogLockWaitTime) {
+        this.changeLogLockWaitTime = changeLogLockWaitTime;
+    }
+
+    /**
+     * Gets the lock wait time in minutes.
+     *
+     * @return the lock wait time in minutes.
+     */
+    public Long getChangeLogLockWaitTime() {
+        if (changeLogLockWaitTime != null) {
+            return changeLogLockWaitTime;
+        }
+        return LiquibaseConfiguration.getInstance().getConfiguration(GlobalConfiguration.class).getDatabaseChangeLogLockWaitTime();
     }
     
     /**
@@ -88,6 +218,28 @@ public class WildflyLockService implements LockService {
      */
     @Override
     public void setChangeLogLockRecheckTime(long changeLogLocRecheckTime) {
+        this.changeLogLockRecheckTime = changeLogLocRecheckTime;
+    }
+
+    /**
+     * Gets the maximum lock recheck time in seconds.
+     *
+     * @return the maximum lock recheck time in seconds.
+     */
+    public Long getChangeLogLockRecheckTime() {
+        if (changeLogLockRecheckTime != null) {
+            return changeLogLockRecheckTime;
+        }
+        return LiquibaseConfiguration.getInstance().getConfiguration(GlobalConfiguration.class).getDatabaseChangeLogLockPollRate();
+    }
+
+    /**
+     * Gets the lock metrics.
+     *
+     * @return the lock metrics.
+     */
+    public LockMetrics getMetrics() {
+        return metrics;
     }
     
     /**
@@ -95,62 +247,268 @@ public class WildflyLockService implements LockService {
      */
     @Override
     public boolean hasChangeLogLock() {
-        ModelNode node = lock(ClientConstants.READ_RESOURCE_OPERATION);
-        if (Operations.isSuccessfulOutcome(node)) {
+        if (!locked || lost) {
+            return false;
+        }
+        if (scopes == null) {
             return true;
         }
-        return false;
+        long now = System.currentTimeMillis();
+        for (LockScope scope : scopes) {
+            LockLease tmp = scope.getLease();
+            if (tmp == null || tmp.getExpires() <= now) {
+                return false;
+            }
+        }
+        return true;
     }
     
+    /**
+     * Returns {@code true} if the locks are held but the leases were lost or
+     * expired, so the changes must not continue.
+     *
+     * @return {@code true} if the held leases are not valid anymore.
+     */
+    public boolean isLost() {
+        return locked && !hasChangeLogLock();
+    }
+
     /**
      * {@inheritDoc }
      */
     @Override
     public void waitForLock() throws LockException {
+        long start = System.currentTimeMillis();
+        long deadline = start + TimeUnit.MINUTES.toMillis(getChangeLogLockWaitTime());
+        long maxDelay = Math.max(TimeUnit.SECONDS.toMillis(getChangeLogLockRecheckTime()), INITIAL_DELAY);
+        long delay = INITIAL_DELAY;
+
         boolean tmp = acquireLock();
-        if (!tmp) {
-            String lockedBy = "UNKNOWN";
-            DatabaseChangeLogLock[] locks = listLocks();
-            if (locks != null && locks.length > 0) {
-                lockedBy = locks[0].getLockedBy();
+        long now = System.currentTimeMillis();
+        while (!tmp && now < deadline) {
+            long sleep = Math.min(delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1), deadline - now);
+            LogFactory.getLogger().info("Waiting for changelog lock. Currently locked by " + lockedBy()
+                    + ", waiting " + (now - start) + " ms, next attempt in " + sleep + " ms");
+            try {
+                Thread.sleep(sleep);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                metrics.waited(System.currentTimeMillis() - start, false);
+                throw new LockException(ex);
             }
-            throw new LockException("Could not acquire change log lock.  Currently locked by " + lockedBy);
+            delay = Math.min(delay * 2, maxDelay);
+            tmp = acquireLock();
+            now = System.currentTimeMillis();
         }
 
+        metrics.waited(now - start, tmp);
+        if (!tmp) {
+            throw new LockException("Could not acquire change log lock.  Currently locked by " + lockedBy());
+        }
+        LogFactory.getLogger().debug("Changelog lock acquired after " + (now - start) + " ms");
     }
-    
+
     /**
      * {@inheritDoc }
      */
     @Override
     public boolean acquireLock() throws LockException {
-        String author = System.getProperty("user.name");
-        String date = SDF.format(new Date());
-        
-        StringBuilder sb = new StringBuilder();
-        sb.append(ClientConstants.ADD).append('(');
-        sb.append(ClientConstants.VALUE).append('=');
-        sb.append(date).append(SEPARATOR);
-        sb.append(author).append(')');
-        
-        ModelNode node = lock(sb.toString());
-        
-        if (Operations.isSuccessfulOutcome(node)) {
+        metrics.attempt();
+        if (locked && !lost) {
+            return true;
+        }
+        WildflyDatabaseConnection con = connection();
+        if (con.isOffline()) {
+            // nothing to lock without server
+            lost = false;
+            locked = true;
+            metrics.acquired(false);
             return true;
         }
+        List<LockScope> items = scopes();
+        boolean global = items.get(0).isGlobal();
+        long leaseTime = Config.getLockLease();
+
+        // the first step reads the lock holders and never fails
+        LockLease tmp = LockLease.create(leaseTime, 1, owner);
+        List<ModelNode> steps = new ArrayList<>();
+        steps.add(readLocks());
+        if (!global) {
+            addAbsent(steps, globalAddress());
+        }
+        for (LockScope scope : items) {
+            steps.add(add(scope.getAddress(), tmp.toValue()));
+            steps.add(add(markerAddress(scope, tmp), Long.toString(tmp.getFence())));
+        }
+        if (global) {
+            steps.add(readLocks());
+        }
+        ModelNode node = con.executeComposite(steps);
+        if (node == null) {
+            throw new LockException("Could not acquire change log lock. The server connection is closed.");
+        }
+        if (Operations.isSuccessfulOutcome(node)) {
+            for (LockScope scope : items) {
+                scope.setHolder(tmp);
+                scope.setLease(tmp);
+            }
+            if (acquired(items, node, steps.size(), false)) {
+                return true;
+            }
+            updateHolders(readHolders());
+        } else {
+            ModelNode step = node.get(ClientConstants.RESULT, "step-1");
+            if (step.isDefined() && Operations.isSuccessfulOutcome(step)) {
+                updateHolders(step.get(ClientConstants.RESULT));
+            } else {
+                updateHolders(readHolders());
+            }
+        }
+
+        // take over the expired leases and add the free locks
+        steps.clear();
+        List<LockLease> leases = new ArrayList<>();
+        boolean takeOver = false;
+        List<LockScope> expired = blockers;
+        for (LockScope blocker : expired) {
+            LockLease current = blocker.getHolder();
+            if (!current.isExpired()) {
+                return false;
+            }
+            takeOver = true;
+            steps.add(Operations.createRemoveOperation(markerAddress(blocker, current)));
+            steps.add(Operations.createRemoveOperation(blocker.getAddress()));
+        }
+        if (!global && expired.isEmpty()) {
+            addAbsent(steps, globalAddress());
+        }
+        for (LockScope scope : items) {
+            LockLease current = scope.getHolder();
+            if (current == null) {
+                LockLease next = LockLease.create(leaseTime, 1, owner);
+                leases.add(next);
+                steps.add(add(scope.getAddress(), next.toValue()));
+                steps.add(add(markerAddress(scope, next), Long.toString(next.getFence())));
+            } else if (current.isExpired()) {
+                LockLease next = current.takeOver(leaseTime, owner);
+                leases.add(next);
+                takeOver = true;
+                steps.add(Operations.createRemoveOperation(markerAddress(scope, current)));
+                steps.add(Operations.createWriteAttributeOperation(scope.getAddress(), ClientConstants.VALUE, next.toValue()));
+                steps.add(add(markerAddress(scope, next), Long.toString(next.getFence())));
+            } else {
+                return false;
+            }
+        }
+        if (!takeOver) {
+            return false;
+        }
+        if (global) {
+            steps.add(readLocks());
+        }
+        node = con.executeComposite(steps);
+        if (node != null && Operations.isSuccessfulOutcome(node)) {
+            for (LockScope blocker : expired) {
+                LogFactory.getLogger().info("Expired change log lock " + blocker + " of " + blocker.getHolder().getLockedBy() + " removed");
+            }
+            for (int i = 0; i < items.size(); i++) {
+                LockScope scope = items.get(i);
+                LockLease current = scope.getHolder();
+                if (current != null) {
+                    LogFactory.getLogger().info("Expired change log lock " + scope + " of " + current.getLockedBy() + " taken over");
+                }
+                scope.setHolder(leases.get(i));
+                scope.setLease(leases.get(i));
+            }
+            return acquired(items, node, steps.size(), true);
+        }
         return false;
     }
+
+    /**
+     * Completes the successful acquisition. The whole server lock is released
+     * again if the last step of the composite operation found a scoped lock.
+     *
+     * @param items the acquired scopes.
+     * @param node the result of the composite operation.
+     * @param size the number of steps of the composite operation.
+     * @param takeOver the expired lease take over flag.
+     * @return {@code true} if the locks are held.
+     * @throws LockException if the method fails.
+     */
+    private boolean acquired(List<LockScope> items, ModelNode node, int size, boolean takeOver) throws LockException {
+        if (items.get(0).isGlobal()) {
+            updateBlockers(node.get(ClientConstants.RESULT, "step-" + size, ClientConstants.RESULT));
+            if (!blockers.isEmpty()) {
+                undo(items);
+                return false;
+            }
+        }
+        metrics.acquired(takeOver);
+        locked();
+        return true;
+    }
+
+    /**
+     * Removes the just acquired leases which conflict with the blockers.
+     *
+     * @param items the acquired scopes.
+     * @throws LockException if the method fails.
+     */
+    private void undo(List<LockScope> items) throws LockException {
+        List<ModelNode> steps = new ArrayList<>();
+        for (LockScope scope : items) {
+            LockLease tmp = scope.getLease();
+            scope.setLease(null);
+            if (tmp != null) {
+                steps.add(Operations.createRemoveOperation(scope.getAddress()));
+                steps.add(Operations.createRemoveOperation(markerAddress(scope, tmp)));
+            }
+        }
+        ModelNode node = connection().executeComposite(steps);
+        if (node == null || !Operations.isSuccessfulOutcome(node)) {
+            String value = node == null ? "connection closed" : Operations.getFailureDescription(node).asString();
+            throw new LockException("Could not release change log lock " + items + " which conflicts with " + blockers + "! Error: " + value);
+        }
+    }
     
     /**
      * {@inheritDoc }
      */
     @Override
     public void releaseLock() throws LockException {
-        ModelNode node = lock(ClientConstants.REMOVE_OPERATION);
-        if (!Operations.isSuccessfulOutcome(node)) {            
-            String value = Operations.getFailureDescription(node).asString();
-            throw new RuntimeException("Could not release lock! Error: " + value);
+        stopHeartbeat();
+        if (!locked) {
+            return;
         }
+        locked = false;
+        long held = metrics.released();
+        if (connection().isOffline()) {
+            return;
+        }
+        List<ModelNode> steps = new ArrayList<>();
+        LockLease last = null;
+        for (LockScope scope : scopes) {
+            LockLease tmp = scope.getLease();
+            scope.setLease(null);
+            if (tmp != null) {
+                last = tmp;
+                steps.add(Operations.createRemoveOperation(scope.getAddress()));
+                steps.add(Operations.createRemoveOperation(markerAddress(scope, tmp)));
+            }
+        }
+        if (lost) {
+            LogFactory.getLogger().warning("Change log lock lease " + scopes + " was lost before release");
+            logRelease(last, held, "lost");
+            return;
+        }
+        ModelNode node = connection().executeComposite(steps);
+        if (node == null || !Operations.isSuccessfulOutcome(node)) {
+            String value = node == null ? "connection closed" : Operations.getFailureDescription(node).asString();
+            logRelease(last, held, "failed");
+            throw new LockException("Could not release lock! Error: " + value);
+        }
+        logRelease(last, held, "released");
     }
     
     /**
@@ -158,23 +516,23 @@ public class WildflyLockService implements LockService {
      */
     @Override
     public DatabaseChangeLogLock[] listLocks() throws LockException {
-        ModelNode node = lock(ClientConstants.READ_RESOURCE_OPERATION);
-        if (Operations.isSuccessfulOutcome(node)) {            
-            String value =  node.get(ClientConstants.RESULT).asObject().get(ClientConstants.VALUE).asString();
-            String[] tmp = value.split(SEPARATOR);
-            String user = tmp[1];
-
-            Date date = null;
-            try {
-                date = SDF.parse(tmp[0]);
-            } catch (ParseException ex) {
-                // ok
+        if (connection().isOffline()) {
+            return new DatabaseChangeLogLock[0];
+        }
+        List<LockScope> items = scopes();
+        updateHolders(readHolders());
+        List<DatabaseChangeLogLock> result = new ArrayList<>();
+        for (LockScope scope : items) {
+            LockLease current = scope.getHolder();
+            if (current != null) {
+                result.add(new DatabaseChangeLogLock(result.size() + 1, current.getDate(), current.getLockedBy() + " [" + scope + "]"));
             }
-            return new DatabaseChangeLogLock[]{
-                new DatabaseChangeLogLock(1, date, user)
-            };
-        } 
-        return new DatabaseChangeLogLock[0];
+        }
+        for (LockScope blocker : blockers) {
+            LockLease current = blocker.getHolder();
+            result.add(new DatabaseChangeLogLock(result.size() + 1, current.getDate(), current.getLockedBy() + " [" + blocker + "]"));
+        }
+        return result.toArray(new DatabaseChangeLogLock[result.size()]);
     }
     
     /**
@@ -182,7 +540,30 @@ public class WildflyLockService implements LockService {
      */
     @Override
     public void forceReleaseLock() throws LockException, DatabaseException {
-        releaseLock();
+        stopHeartbeat();
+        locked = false;
+        if (connection().isOffline()) {
+            return;
+        }
+        List<LockScope> items = scopes();
+        updateHolders(readHolders());
+        WildflyDatabaseConnection con = connection();
+        for (LockScope scope : items) {
+            scope.setLease(null);
+            LockLease current = scope.getHolder();
+            if (current == null) {
+                continue;
+            }
+            ModelNode node = con.execute(Operations.createRemoveOperation(scope.getAddress()));
+            if (node == null || !Operations.isSuccessfulOutcome(node)) {
+                String value = node == null ? "connection closed" : Operations.getFailureDescription(node).asString();
+                throw new LockException("Could not release lock! Error: " + value);
+            }
+            if (current.getOwner() != null) {
+                con.execute(Operations.createRemoveOperation(markerAddress(scope, current)));
+            }
+            scope.setHolder(null);
+        }
     }
     
     /**
@@ -190,7 +571,13 @@ public class WildflyLockService implements LockService {
      */
     @Override
     public void reset() {
-
+        stopHeartbeat();
+        unregisterMetrics();
+        locked = false;
+        lost = false;
+        scopes = null;
+        blockers = new ArrayList<>();
+        parentAddress = null;
     }
     
     /**
@@ -206,11 +593,378 @@ public class WildflyLockService implements LockService {
      */
     @Override
     public void destroy() throws DatabaseException {
+        stopHeartbeat();
+        unregisterMetrics();
+    }
+
+    /**
+     * Marks the leases as held and starts the heartbeat. The second thread of
+     * the heartbeat marks the leases lost at their local expiration, even if a
+     * renewal is blocked by the server.
+     */
+    private void locked() {
+        lost = false;
+        locked = true;
+        long period = Long.MAX_VALUE;
+        for (LockScope scope : scopes) {
+            period = Math.min(period, scope.getLease().getLease() / 3);
+        }
+        period = Math.max(period, 1000);
+        synchronized (this) {
+            heartbeat = Executors.newScheduledThreadPool(2, r -> {
+                Thread thread = new Thread(r, "liquibase-wildfly-lock-heartbeat");
+                thread.setDaemon(true);
+                return thread;
+            });
+            heartbeat.scheduleAtFixedRate(this::renew, period, period, TimeUnit.MILLISECONDS);
+        }
+        scheduleExpiry(scopes);
+    }
 
+    /**
+     * Renews the held leases in one composite operation. The renewal fails if
+     * the marker of the lease owner and fence does not exist anymore, in that
+     * case the leases were taken over and are lost immediately.
+     */
+    private void renew() {
+        List<LockScope> items = scopes;
+        if (!locked || lost || items == null) {
+            return;
+        }
+        List<ModelNode> steps = new ArrayList<>();
+        List<LockLease> leases = new ArrayList<>();
+        for (LockScope scope : items) {
+            LockLease tmp = scope.getLease();
+            if (tmp == null) {
+                return;
+            }
+            LockLease next = tmp.renew();
+            leases.add(next);
+            steps.add(Operations.createReadResourceOperation(markerAddress(scope, tmp)));
+            steps.add(Operations.createWriteAttributeOperation(scope.getAddress(), ClientConstants.VALUE, next.toValue()));
+        }
+        ModelNode node = connection().executeComposite(steps);
+        if (node != null && Operations.isSuccessfulOutcome(node)) {
+            for (int i = 0; i < items.size(); i++) {
+                items.get(i).setLease(leases.get(i));
+            }
+            scheduleExpiry(items);
+            return;
+        }
+        String error = node == null ? "connection closed" : Operations.getFailureDescription(node).asString();
+        if (node != null && isMarkerMissing(node, items.size())) {
+            lose(items, error);
+        } else {
+            LogFactory.getLogger().warning("Could not renew change log lock lease " + items + ". Error: " + error);
+        }
+    }
+
+    /**
+     * Returns {@code true} if any marker read step of the renewal failed
+     * because the marker does not exist.
+     *
+     * @param node the composite result.
+     * @param size the number of the renewed scopes.
+     * @return {@code true} if a marker is missing.
+     */
+    private static boolean isMarkerMissing(ModelNode node, int size) {
+        if (!node.hasDefined(ClientConstants.RESULT)) {
+            return false;
+        }
+        ModelNode result = node.get(ClientConstants.RESULT);
+        for (int i = 0; i < size; i++) {
+            String step = "step-" + (2 * i + 1);
+            if (result.hasDefined(step) && !Operations.isSuccessfulOutcome(result.get(step))) {
+                String error = Operations.getFailureDescription(result.get(step)).asString();
+                for (String code : NOT_FOUND) {
+                    if (error.contains(code)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Schedules the loss of the leases at their local expiration.
+     *
+     * @param items the held scopes.
+     */
+    private synchronized void scheduleExpiry(List<LockScope> items) {
+        if (heartbeat == null) {
+            return;
+        }
+        long expires = Long.MAX_VALUE;
+        for (LockScope scope : items) {
+            LockLease tmp = scope.getLease();
+            if (tmp != null) {
+                expires = Math.min(expires, tmp.getExpires());
+            }
+        }
+        if (expiry != null) {
+            expiry.cancel(false);
+        }
+        long delay = Math.max(expires - System.currentTimeMillis(), 0);
+        expiry = heartbeat.schedule(() -> expired(items), delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Marks the leases lost if they were not renewed before their expiration.
+     *
+     * @param items the held scopes.
+     */
+    private void expired(List<LockScope> items) {
+        if (!locked || lost || items != scopes) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (LockScope scope : items) {
+            LockLease tmp = scope.getLease();
+            if (tmp == null || tmp.getExpires() <= now) {
+                lose(items, "lease expired");
+                return;
+            }
+        }
+        scheduleExpiry(items);
+    }
+
+    /**
+     * Marks the leases lost and stops the heartbeat.
+     *
+     * @param items the held scopes.
+     * @param error the loss reason.
+     */
+    private synchronized void lose(List<LockScope> items, String error) {
+        if (lost) {
+            return;
+        }
+        lost = true;
+        metrics.lost();
+        LogFactory.getLogger().severe("Change log lock lease " + items + " lost. Error: " + error);
+        stopHeartbeat();
+    }
+
+    private synchronized void stopHeartbeat() {
+        if (expiry != null) {
+            expiry.cancel(false);
+            expiry = null;
+        }
+        if (heartbeat != null) {
+            heartbeat.shutdownNow();
+            heartbeat = null;
+        }
+    }
+
+    /**
+     * Logs the structured lock release line.
+     *
+     * @param lease the released lease.
+     * @param held the hold time in milliseconds.
+     * @param status the release status.
+     */
+    private void logRelease(LockLease lease, long held, String status) {
+        StringBuilder sb = new StringBuilder("lock-release");
+        sb.append(" status=").append(status);
+        sb.append(" scopes=").append(scopes);
+        if (lease != null) {
+            sb.append(" owner=").append(lease.getOwner());
+            sb.append(" user=").append(lease.getUser());
+            sb.append(" host=").append(lease.getHost());
+            sb.append(" pid=").append(lease.getPid());
+            sb.append(" fence=").append(lease.getFence());
+        }
+        sb.append(" waitMs=").append(metrics.getLastWaitTime());
+        sb.append(" holdMs=").append(held);
+        sb.append(" attempts=").append(metrics.getAttempts());
+        sb.append(" takeovers=").append(metrics.getTakeovers());
+        LogFactory.getLogger().info(sb.toString());
+    }
+
+    /**
+     * Registers the lock metrics MBean. A second service with the same scopes
+     * in the same JVM gets the identity suffix.
+     */
+    private void registerMetrics() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_DOMAIN + ":type=LockService,name=" + ObjectName.quote(scopes.toString()));
+            if (server.isRegistered(name)) {
+                name = new ObjectName(name.getCanonicalName() + ",id=" + System.identityHashCode(this));
+            }
+            server.registerMBean(metrics, name);
+            mbeanName = name;
+        } catch (Exception ex) {
+            LogFactory.getLogger().debug("Could not register the change log lock metrics", ex);
+        }
+    }
+
+    private void unregisterMetrics() {
+        if (mbeanName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+        } catch (Exception ex) {
+            LogFactory.getLogger().debug("Could not unregister the change log lock metrics", ex);
+        }
+        mbeanName = null;
+    }
+
+    private String lockedBy() {
+        StringBuilder sb = new StringBuilder();
+        List<LockScope> items = new ArrayList<>(scopes);
+        items.addAll(blockers);
+        for (LockScope scope : items) {
+            LockLease tmp = scope.getHolder();
+            if (tmp != null && !tmp.isOwner(owner)) {
+                if (sb.length() > 0) {
+                    sb.append(", ");
+                }
+                sb.append(tmp.getLockedBy()).append(" [").append(scope).append(']');
+            }
+        }
+        if (sb.length() == 0) {
+            return "UNKNOWN";
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Updates the lock holders of the scopes.
+     *
+     * @param properties the system properties of the lock parent resource.
+     */
+    private void updateHolders(ModelNode properties) {
+        for (LockScope scope : scopes) {
+            String value = value(properties, scope.getName());
+            scope.setHolder(value != null ? LockLease.parse(value) : null);
+        }
+        updateBlockers(properties);
+    }
+
+    /**
+     * Updates the foreign locks which exclude the scopes.
+     *
+     * @param properties the system properties of the lock parent resource.
+     */
+    private void updateBlockers(ModelNode properties) {
+        List<LockScope> result = new ArrayList<>();
+        if (scopes.get(0).isGlobal()) {
+            if (properties.isDefined()) {
+                for (String name : properties.keys()) {
+                    LockScope scope = LockScope.parse(name);
+                    String value = value(properties, name);
+                    if (scope != null && LockLease.isLease(value)) {
+                        scope.setAddress(childAddress(name));
+                        scope.setHolder(LockLease.parse(value));
+                        result.add(scope);
+                    }
+                }
+            }
+        } else {
+            String value = value(properties, Config.getLockProperty());
+            if (value != null) {
+                LockScope scope = new LockScope(null);
+                scope.setAddress(globalAddress());
+                scope.setHolder(LockLease.parse(value));
+                result.add(scope);
+            }
+        }
+        blockers = result;
+    }
+
+    private static String value(ModelNode properties, String name) {
+        if (!properties.hasDefined(name) || !properties.get(name).hasDefined(ClientConstants.VALUE)) {
+            return null;
+        }
+        return properties.get(name, ClientConstants.VALUE).asString();
+    }
+
+    private ModelNode readHolders() throws LockException {
+        ModelNode node = connection().execute(readLocks());
+        if (node == null || !Operations.isSuccessfulOutcome(node)) {
+            String value = node == null ? "connection closed" : Operations.getFailureDescription(node).asString();
+            throw new LockException("Could not read the change log locks! Error: " + value);
+        }
+        return node.get(ClientConstants.RESULT);
+    }
+
+    private ModelNode readLocks() {
+        ModelNode read = Operations.createOperation(READ_CHILDREN_RESOURCES_OPERATION, parentAddress);
+        read.get(ClientConstants.CHILD_TYPE).set(SYSTEM_PROPERTY);
+        return read;
+    }
+
+    private static ModelNode parent(ModelNode address) {
+        ModelNode result = new ModelNode().setEmptyList();
+        List<ModelNode> items = address.asList();
+        for (int i = 0; i < items.size() - 1; i++) {
+            result.add(items.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Adds the steps which fail if the resource exists and change nothing
+     * otherwise.
+     *
+     * @param steps the steps.
+     * @param address the resource address.
+     */
+    private static void addAbsent(List<ModelNode> steps, ModelNode address) {
+        steps.add(Operations.createAddOperation(address));
+        steps.add(Operations.createRemoveOperation(address));
+    }
+
+    private static ModelNode add(ModelNode address, String value) {
+        ModelNode op = Operations.createAddOperation(address);
+        op.get(ClientConstants.VALUE).set(value);
+        return op;
+    }
+
+    /**
+     * Gets the sorted lock scopes with resolved addresses.
+     *
+     * @return the sorted lock scopes.
+     * @throws LockException if the method fails.
+     */
+    private List<LockScope> scopes() throws LockException {
+        if (scopes == null) {
+            List<LockScope> items = LockScope.create(connection().getLockScopes());
+            for (LockScope scope : items) {
+                scope.setAddress(address(scope.getName()));
+            }
+            parentAddress = parent(items.get(0).getAddress());
+            scopes = items;
+            registerMetrics();
+        }
+        return scopes;
+    }
+
+    private ModelNode markerAddress(LockScope scope, LockLease lease) {
+        return childAddress(scope.getMarkerName(lease));
+    }
+
+    private ModelNode globalAddress() {
+        return childAddress(Config.getLockProperty());
+    }
+
+    private ModelNode childAddress(String name) {
+        ModelNode result = parentAddress.clone();
+        result.add(SYSTEM_PROPERTY, name);
+        return result;
+    }
+
+    private ModelNode address(String name) throws LockException {
+        try {
+            return connection().buildDomainProfileAddress("/system-property=" + name);
+        } catch (DatabaseException ex) {
+            throw new LockException(ex);
+        }
     }
 
-    private ModelNode lock(String method) {
-        WildflyDatabaseConnection con = (WildflyDatabaseConnection) database.getConnection();
-        return con.processDomainProfileCommand("/system-property=" + Config.getLockProperty() + ":" + method);
+    private WildflyDatabaseConnection connection() {
+        return (WildflyDatabaseConnection) database.getConnection();
     }
 }
@@ -16,6 +16,7 @@
 package liquibase.ext.wildfly.statement;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import liquibase.statement.SqlStatement;
 
@@ -25,15 +26,105 @@ import liquibase.statement.SqlStatement;
  */
 public class CliStatement implements SqlStatement {
 
+    /**
+     * The domain profile address prefix.
+     */
+    private static final String PROFILE_PREFIX = "/profile=";
+
+    /**
+     * The address prefix of the profile scoped resources.
+     */
+    private static final String SUBSYSTEM_PREFIX = "/subsystem=";
+
     private List<String> cli = new ArrayList<>();
 
+    /**
+     * The target domain profiles.
+     */
+    private List<String> profiles = Collections.emptyList();
+
+    /**
+     * The key of the change set of the statement.
+     */
+    private String changeSetKey;
+
+    /**
+     * The change set timeout in milliseconds or zero.
+     */
+    private long changeSetTimeout;
+
     public CliStatement(List<String> cli) {
         this.cli = cli;
     }
 
+    public CliStatement(List<String> cli, List<String> profiles) {
+        this.cli = cli;
+        if (profiles != null) {
+            this.profiles = profiles;
+        }
+    }
+
     public List<String> getCli() {
         return cli;
     }
+
+    public String getChangeSetKey() {
+        return changeSetKey;
+    }
+
+    public void setChangeSetKey(String changeSetKey) {
+        this.changeSetKey = changeSetKey;
+    }
+
+    public long getChangeSetTimeout() {
+        return changeSetTimeout;
+    }
+
+    public void setChangeSetTimeout(long changeSetTimeout) {
+        this.changeSetTimeout = changeSetTimeout;
+    }
+
+    public List<String> getProfiles() {
+        return profiles;
+    }
+
+    /**
+     * Gets the CLI lines expanded for the domain profiles. Each operation line
+     * with the profile scoped {@code /subsystem=} address is expanded for every
+     * profile. The domain level addresses like {@code /server-group=},
+     * {@code /host=} or {@code /deployment=}, the {@code /profile=} addresses and
+     * other commands are kept once. The empty
+     * lines, comments and the {@code batch} and {@code run-batch} lines are
+     * skipped because the expanded lines run in one composite operation.
+     *
+     * @return the expanded CLI lines.
+     */
+    public List<String> getProfileCli() {
+        List<String> result = new ArrayList<>();
+        for (String command : cli) {
+            String line = command.trim();
+            if (line.isEmpty() || line.startsWith("#") || line.equals("batch") || line.equals("run-batch")) {
+                continue;
+            }
+            if (line.startsWith(SUBSYSTEM_PREFIX)) {
+                for (String profile : profiles) {
+                    result.add(PROFILE_PREFIX + profile + line);
+                }
+            } else {
+                result.add(line);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns {@code true} if the statement targets the set of domain profiles.
+     *
+     * @return {@code true} if the statement targets the set of domain profiles.
+     */
+    public boolean isProfiles() {
+        return !profiles.isEmpty();
+    }
            
     public int size() {
         return cli.size();
@@ -52,7 +143,11 @@ public class CliStatement implements SqlStatement {
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        sb.append("CliStatment: [\n");
+        sb.append("CliStatment: ");
+        if (isProfiles()) {
+            sb.append(profiles).append(' ');
+        }
+        sb.append("[\n");
         for (String item : cli) {
             sb.append('\t').append(item).append("\n");
         }
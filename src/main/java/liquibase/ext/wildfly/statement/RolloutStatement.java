@@ -0,0 +1,93 @@
+/*
+ * Copyright 2017 lorislab.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package liquibase.ext.wildfly.statement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The rolling reload statement of the server groups. The CLI lines are the
+ * script output of the rollout, the servers are reloaded by the
+ * {@link liquibase.ext.wildfly.executor.ServerGroupRollout}.
+ *
+ * @author Andrej Petras
+ */
+public class RolloutStatement extends CliStatement {
+
+    /**
+     * The server groups.
+     */
+    private final List<String> serverGroups;
+
+    /**
+     * The maximum number of servers reloaded in parallel.
+     */
+    private final int maxParallel;
+
+    /**
+     * The maximum number of failed servers.
+     */
+    private final int maxFailures;
+
+    /**
+     * The timeout of one wave in seconds.
+     */
+    private final int timeout;
+
+    /**
+     * Reload all started servers, not only the servers which require it.
+     */
+    private final boolean all;
+
+    public RolloutStatement(List<String> serverGroups, int maxParallel, int maxFailures, int timeout, boolean all) {
+        super(script(serverGroups, maxParallel, maxFailures, all));
+        this.serverGroups = serverGroups;
+        this.maxParallel = maxParallel;
+        this.maxFailures = maxFailures;
+        this.timeout = timeout;
+        this.all = all;
+    }
+
+    public List<String> getServerGroups() {
+        return serverGroups;
+    }
+
+    public int getMaxParallel() {
+        return maxParallel;
+    }
+
+    public int getMaxFailures() {
+        return maxFailures;
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    public boolean isAll() {
+        return all;
+    }
+
+    private static List<String> script(List<String> serverGroups, int maxParallel, int maxFailures, boolean all) {
+        List<String> result = new ArrayList<>();
+        result.add("# rollout server-groups=" + String.join(",", serverGroups) + " max-parallel=" + maxParallel
+                + " max-failures=" + maxFailures + " all=" + all);
+        for (String group : serverGroups) {
+            result.add("/server-group=" + group + ":reload-servers(blocking=true)");
+        }
+        return result;
+    }
+}